@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.NoLogFactory;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AmazonECSDiscoveryStrategy#discoverNodes()} against simulated ECS/EC2 APIs.<br>
+ *
+ * {@code coldDiscovery} uses a new strategy for every discovery, so nothing is cached; {@code steadyStateDiscovery}
+ * reuses a single strategy, as Hazelcast does between discovery ticks. The {@code awsCalls}, {@code throttledCalls}
+ * and {@code discoveries} counters report totals per iteration, so AWS calls per discovery is
+ * {@code awsCalls / discoveries}. Run with {@code -prof gc} to also report the allocation rate; since unchanged tasks
+ * are neither described nor rebuilt, {@code gc.alloc.rate.norm} of {@code steadyStateDiscovery} is mostly spent on
+ * the simulated {@code listTasks} responses, and dividing it by {@code tasks} bounds the allocation per unchanged task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscoverNodesBenchmark {
+
+    private static final int HAZELCAST_PORT = 5701;
+
+    @Param({"10", "500", "5000"})
+    public int tasks;
+
+    @Param({"1", "50", "500"})
+    public int containerInstances;
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    @Param({"0"})
+    public int throttleEvery;
+
+    private final ILogger logger = new NoLogFactory().getLogger(DiscoverNodesBenchmark.class.getName());
+    private final Map<String, Comparable> properties = Collections.emptyMap();
+
+    private SimulatedTaskMetadataEndpoint taskMetadataEndpoint;
+    private SimulatedAwsApi api;
+    private SimulatedAmazonECS ecsClient;
+    private SimulatedAmazonEC2 ec2Client;
+    private AmazonECSDiscoveryStrategy steadyStateStrategy;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        taskMetadataEndpoint = new SimulatedTaskMetadataEndpoint(HAZELCAST_PORT);
+
+        SimulatedTopology topology = new SimulatedTopology(tasks, containerInstances, HAZELCAST_PORT);
+        api = new SimulatedAwsApi(latencyMillis, throttleEvery);
+        ecsClient = new SimulatedAmazonECS(topology, api);
+        ec2Client = new SimulatedAmazonEC2(topology, api);
+
+        steadyStateStrategy = newStrategy();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        steadyStateStrategy.destroy();
+        taskMetadataEndpoint.close();
+    }
+
+    @Benchmark
+    public Iterable<DiscoveryNode> coldDiscovery(ColdStrategy coldStrategy, AwsCalls awsCalls) {
+        long calls = api.getCalls();
+        long throttledCalls = api.getThrottledCalls();
+
+        Iterable<DiscoveryNode> nodes = coldStrategy.strategy.discoverNodes();
+
+        awsCalls.awsCalls += api.getCalls() - calls;
+        awsCalls.throttledCalls += api.getThrottledCalls() - throttledCalls;
+        awsCalls.discoveries++;
+        return nodes;
+    }
+
+    @Benchmark
+    public Iterable<DiscoveryNode> steadyStateDiscovery(AwsCalls awsCalls) {
+        long calls = api.getCalls();
+        long throttledCalls = api.getThrottledCalls();
+
+        Iterable<DiscoveryNode> nodes = steadyStateStrategy.discoverNodes();
+
+        awsCalls.awsCalls += api.getCalls() - calls;
+        awsCalls.throttledCalls += api.getThrottledCalls() - throttledCalls;
+        awsCalls.discoveries++;
+        return nodes;
+    }
+
+    private AmazonECSDiscoveryStrategy newStrategy() {
+        AmazonECSDiscoveryStrategy strategy =
+                new AmazonECSDiscoveryStrategy(logger, properties, ecsClient, ec2Client, HAZELCAST_PORT);
+        strategy.start();
+        return strategy;
+    }
+
+    @State(Scope.Thread)
+    public static class ColdStrategy {
+
+        private AmazonECSDiscoveryStrategy strategy;
+
+        @Setup(Level.Invocation)
+        public void setUp(DiscoverNodesBenchmark benchmark) {
+            strategy = benchmark.newStrategy();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            strategy.destroy();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class AwsCalls {
+
+        public long awsCalls;
+        public long throttledCalls;
+        public long discoveries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            awsCalls = 0;
+            throttledCalls = 0;
+            discoveries = 0;
+        }
+
+    }
+
+}
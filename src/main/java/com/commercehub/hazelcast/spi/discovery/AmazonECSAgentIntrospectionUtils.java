@@ -16,31 +16,28 @@
 
 package com.commercehub.hazelcast.spi.discovery;
 
-import com.amazonaws.AmazonClientException;
 import com.amazonaws.SdkClientException;
-import com.amazonaws.internal.EC2CredentialsUtils;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 
-import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 /**
- * Utility class for retrieving Amazon ECS Agent Introspection data.<br>
+ * Utility class for retrieving Amazon ECS Agent Introspection and ECS Task Metadata data.<br>
  *
- * More information about Amazon ECS Agent Introspection
+ * More information about Amazon ECS Agent Introspection and the ECS Task Metadata endpoint
  *
  * @see <a
  *      href="http://docs.aws.amazon.com/AmazonECS/latest/developerguide/ecs-agent-introspection.html">Amazon
  *      EC2 Container Service Developer Guide: Amazon ECS Container Agent Introspection</a>
+ * @see <a
+ *      href="https://docs.aws.amazon.com/AmazonECS/latest/developerguide/task-metadata-endpoint-v4.html">Amazon
+ *      Elastic Container Service Developer Guide: Task metadata endpoint version 4</a>
  */
 public class AmazonECSAgentIntrospectionUtils {
 
@@ -56,8 +53,19 @@ public class AmazonECSAgentIntrospectionUtils {
     private static final String ECS_METADATA_ROOT = "/v1/metadata";
     private static final String ECS_TASKS_ROOT = "/v1/tasks";
 
+    /**
+     * System property for overriding the ECS Task Metadata endpoint (version 4) that is otherwise read from the
+     * {@value #ECS_CONTAINER_METADATA_URI_V4_ENVIRONMENT_VARIABLE} environment variable.
+     */
+    public static final String ECS_CONTAINER_METADATA_URI_V4_OVERRIDE_SYSTEM_PROPERTY =
+            "com.commercehub.amazonaws.util.ecsContainerMetadataURIV4Override";
+
+    /** Environment variable ECS sets to the Task Metadata endpoint (version 4) of each container. */
+    public static final String ECS_CONTAINER_METADATA_URI_V4_ENVIRONMENT_VARIABLE = "ECS_CONTAINER_METADATA_URI_V4";
+
+    private static final String ECS_TASK_METADATA_TASK_PATH = "/task";
+
     private static final int DEFAULT_QUERY_RETRIES = 3;
-    private static final int MINIMUM_RETRY_WAIT_TIME_MILLISECONDS = 250;
 
     private static final ObjectMapper mapper = new ObjectMapper();
 
@@ -66,20 +74,25 @@ public class AmazonECSAgentIntrospectionUtils {
         mapper.setPropertyNamingStrategy(PropertyNamingStrategy.PASCAL_CASE_TO_CAMEL_CASE);
     }
 
-    private static final Log log = LogFactory.getLog(AmazonECSAgentIntrospectionUtils.class);
+    private static final AmazonECSIntrospectionClient client = new AmazonECSIntrospectionClient(mapper);
 
-    public static Metadata getMetadata() {
-        String json = getData(ECS_METADATA_ROOT);
-        if (null == json) {
-            return null;
-        }
+    /** The agent metadata never changes while this container is alive, so it's retrieved only once. */
+    private static volatile Metadata metadata;
 
-        try {
-            return mapper.readValue(json, Metadata.class);
-        } catch (Exception e) {
-            log.warn("Unable to parse ECS Agent Metadata (" + json + "): " + e.getMessage(), e);
-            return null;
+    /**
+     * Get information about the ECS container instance this process is running on. The result is cached for the
+     * lifetime of the process once it has been retrieved successfully.
+     *
+     * @return the ECS Agent metadata, or null if it couldn't be retrieved
+     */
+    public static Metadata getMetadata() {
+        Metadata result = metadata;
+        if (result == null) {
+            result = AmazonECSDiscoveryMetrics.record(AmazonECSDiscoveryApi.AGENT_INTROSPECTION, () -> client.get(
+                    getHostAddressForECSAgentIntrospectionAPI() + ECS_METADATA_ROOT, Metadata.class));
+            metadata = result;
         }
+        return result;
     }
 
     /**
@@ -90,17 +103,8 @@ public class AmazonECSAgentIntrospectionUtils {
      * @return information about the ECS Task identified by the provided dockerId
      */
     public static Task getTask(String dockerId) {
-        String json = getData(ECS_TASKS_ROOT + "?dockerid=" + dockerId);
-        if (null == json) {
-            return null;
-        }
-
-        try {
-            return mapper.readValue(json, Task.class);
-        } catch (Exception e) {
-            log.warn("Unable to parse ECS Agent Task (" + json + "): " + e.getMessage(), e);
-            return null;
-        }
+        return AmazonECSDiscoveryMetrics.record(AmazonECSDiscoveryApi.AGENT_INTROSPECTION, () -> client.get(
+                getHostAddressForECSAgentIntrospectionAPI() + ECS_TASKS_ROOT + "?dockerid=" + dockerId, Task.class));
     }
 
     public static String getData(String path) {
@@ -108,43 +112,58 @@ public class AmazonECSAgentIntrospectionUtils {
     }
 
     public static String getData(String path, int tries) {
-        List<String> items = getItems(path, tries, true);
-        if (null != items && items.size() > 0) {
-            return items.get(0);
-        }
-        return null;
-    }
-
-    private static List<String> getItems(String path, int tries, boolean slurp) {
         if (tries == 0) {
             throw new SdkClientException(
                     "Unable to contact ECS Agent Introspection API.");
         }
+        return AmazonECSDiscoveryMetrics.record(AmazonECSDiscoveryApi.AGENT_INTROSPECTION,
+                () -> client.getString(getHostAddressForECSAgentIntrospectionAPI() + path, tries));
+    }
 
-        List<String> items;
-        try {
-            String hostAddress = getHostAddressForECSAgentIntrospectionAPI();
-            String response = EC2CredentialsUtils.getInstance().readResource(new URI(hostAddress + path));
-            if (slurp) {
-                items = Collections.singletonList(response);
-            } else {
-                items = Arrays.asList(response.split("\n"));
-            }
-            return items;
-        } catch (AmazonClientException ace) {
-            log.warn("Unable to retrieve the requested metadata.");
+    /**
+     * @return true if this process is running in an ECS container that exposes the Task Metadata endpoint (v4)
+     */
+    public static boolean isTaskMetadataAvailable() {
+        return getTaskMetadataEndpoint() != null;
+    }
+
+    /**
+     * Get information about the ECS Task this process is running in from the ECS Task Metadata endpoint (v4).
+     *
+     * @return the task metadata, or null if the endpoint isn't available or the metadata couldn't be retrieved
+     */
+    public static TaskMetadata getTaskMetadata() {
+        String endpoint = getTaskMetadataEndpoint();
+        if (endpoint == null) {
             return null;
-        } catch (Exception e) {
-            // Retry on any other exceptions
-            int pause = (int) (Math.pow(2, DEFAULT_QUERY_RETRIES - tries) * MINIMUM_RETRY_WAIT_TIME_MILLISECONDS);
-            try {
-                Thread.sleep(pause < MINIMUM_RETRY_WAIT_TIME_MILLISECONDS ? MINIMUM_RETRY_WAIT_TIME_MILLISECONDS
-                        : pause);
-            } catch (InterruptedException e1) {
-                Thread.currentThread().interrupt();
-            }
-            return getItems(path, tries - 1, slurp);
         }
+        return AmazonECSDiscoveryMetrics.record(AmazonECSDiscoveryApi.TASK_METADATA,
+                () -> client.get(endpoint + ECS_TASK_METADATA_TASK_PATH, TaskMetadata.class));
+    }
+
+    /**
+     * Get information about the container this process is running in from the ECS Task Metadata endpoint (v4).
+     *
+     * @return the container metadata, or null if the endpoint isn't available or the metadata couldn't be retrieved
+     */
+    public static ContainerMetadata getContainerMetadata() {
+        String endpoint = getTaskMetadataEndpoint();
+        if (endpoint == null) {
+            return null;
+        }
+        return AmazonECSDiscoveryMetrics.record(AmazonECSDiscoveryApi.TASK_METADATA,
+                () -> client.get(endpoint, ContainerMetadata.class));
+    }
+
+    /**
+     * @return the ECS Task Metadata endpoint (v4), or null if this process isn't running in a container that has one
+     */
+    public static String getTaskMetadataEndpoint() {
+        String endpoint = System.getProperty(ECS_CONTAINER_METADATA_URI_V4_OVERRIDE_SYSTEM_PROPERTY);
+        if (endpoint == null) {
+            endpoint = System.getenv(ECS_CONTAINER_METADATA_URI_V4_ENVIRONMENT_VARIABLE);
+        }
+        return endpoint == null || endpoint.isEmpty() ? null : endpoint;
     }
 
     public static String getHostAddressForECSAgentIntrospectionAPI() {
@@ -331,4 +350,255 @@ public class AmazonECSAgentIntrospectionUtils {
 
     }
 
+    public static class TaskMetadata {
+
+        private final String cluster;
+        private final String taskArn;
+        private final String family;
+        private final String revision;
+        private final String serviceName;
+        private final String launchType;
+        private final List<ContainerMetadata> containers;
+
+        @JsonCreator
+        public TaskMetadata(
+                @JsonProperty(value = "Cluster") String cluster,
+                @JsonProperty(value = "TaskARN") String taskArn,
+                @JsonProperty(value = "Family") String family,
+                @JsonProperty(value = "Revision") String revision,
+                @JsonProperty(value = "ServiceName") String serviceName,
+                @JsonProperty(value = "LaunchType") String launchType,
+                @JsonProperty(value = "Containers") List<ContainerMetadata> containers) {
+
+            this.cluster = cluster;
+            this.taskArn = taskArn;
+            this.family = family;
+            this.revision = revision;
+            this.serviceName = serviceName;
+            this.launchType = launchType;
+
+            if (containers != null) {
+                this.containers = new ArrayList<>(containers);
+            } else {
+                this.containers = Collections.emptyList();
+            }
+        }
+
+        public String getCluster() {
+            return cluster;
+        }
+
+        public String getTaskArn() {
+            return taskArn;
+        }
+
+        public String getFamily() {
+            return family;
+        }
+
+        public String getRevision() {
+            return revision;
+        }
+
+        /**
+         * @return the name of the ECS service the task belongs to, or null if it isn't part of a service or the
+         * ECS agent doesn't report it
+         */
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public String getLaunchType() {
+            return launchType;
+        }
+
+        public List<ContainerMetadata> getContainers() {
+            return Collections.unmodifiableList(containers);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{");
+            if (getCluster() != null) {
+                sb.append("Cluster: ").append(getCluster()).append(",");
+            }
+            if (getTaskArn() != null) {
+                sb.append("TaskARN: ").append(getTaskArn()).append(",");
+            }
+            if (getFamily() != null) {
+                sb.append("Family: ").append(getFamily()).append(",");
+            }
+            if (getRevision() != null) {
+                sb.append("Revision: ").append(getRevision()).append(",");
+            }
+            if (getServiceName() != null) {
+                sb.append("ServiceName: ").append(getServiceName()).append(",");
+            }
+            if (getLaunchType() != null) {
+                sb.append("LaunchType: ").append(getLaunchType()).append(",");
+            }
+            if (getContainers() != null) {
+                sb.append("Containers: ").append(getContainers());
+            }
+            sb.append("}");
+            return sb.toString();
+        }
+
+    }
+
+    public static class ContainerMetadata {
+
+        private final String dockerId;
+        private final String name;
+        private final List<Port> ports;
+        private final List<Network> networks;
+
+        @JsonCreator
+        public ContainerMetadata(
+                @JsonProperty(value = "DockerId") String dockerId,
+                @JsonProperty(value = "Name") String name,
+                @JsonProperty(value = "Ports") List<Port> ports,
+                @JsonProperty(value = "Networks") List<Network> networks) {
+
+            this.dockerId = dockerId;
+            this.name = name;
+            this.ports = ports != null ? new ArrayList<>(ports) : Collections.emptyList();
+            this.networks = networks != null ? new ArrayList<>(networks) : Collections.emptyList();
+        }
+
+        public String getDockerId() {
+            return dockerId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Port> getPorts() {
+            return Collections.unmodifiableList(ports);
+        }
+
+        public List<Network> getNetworks() {
+            return Collections.unmodifiableList(networks);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{");
+            if (getDockerId() != null) {
+                sb.append("DockerId: ").append(getDockerId()).append(",");
+            }
+            if (getName() != null) {
+                sb.append("Name: ").append(getName()).append(",");
+            }
+            if (getPorts() != null) {
+                sb.append("Ports: ").append(getPorts()).append(",");
+            }
+            if (getNetworks() != null) {
+                sb.append("Networks: ").append(getNetworks());
+            }
+            sb.append("}");
+            return sb.toString();
+        }
+
+    }
+
+    public static class Port {
+
+        private final Integer containerPort;
+        private final Integer hostPort;
+        private final String hostIp;
+        private final String protocol;
+
+        @JsonCreator
+        public Port(
+                @JsonProperty(value = "ContainerPort") Integer containerPort,
+                @JsonProperty(value = "HostPort") Integer hostPort,
+                @JsonProperty(value = "HostIp") String hostIp,
+                @JsonProperty(value = "Protocol") String protocol) {
+
+            this.containerPort = containerPort;
+            this.hostPort = hostPort;
+            this.hostIp = hostIp;
+            this.protocol = protocol;
+        }
+
+        public Integer getContainerPort() {
+            return containerPort;
+        }
+
+        public Integer getHostPort() {
+            return hostPort;
+        }
+
+        public String getHostIp() {
+            return hostIp;
+        }
+
+        public String getProtocol() {
+            return protocol;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{");
+            if (getContainerPort() != null) {
+                sb.append("ContainerPort: ").append(getContainerPort()).append(",");
+            }
+            if (getHostPort() != null) {
+                sb.append("HostPort: ").append(getHostPort()).append(",");
+            }
+            if (getHostIp() != null) {
+                sb.append("HostIp: ").append(getHostIp()).append(",");
+            }
+            if (getProtocol() != null) {
+                sb.append("Protocol: ").append(getProtocol());
+            }
+            sb.append("}");
+            return sb.toString();
+        }
+
+    }
+
+    public static class Network {
+
+        private final String networkMode;
+        private final List<String> ipv4Addresses;
+
+        @JsonCreator
+        public Network(
+                @JsonProperty(value = "NetworkMode") String networkMode,
+                @JsonProperty(value = "IPv4Addresses") List<String> ipv4Addresses) {
+
+            this.networkMode = networkMode;
+            this.ipv4Addresses = ipv4Addresses != null ? new ArrayList<>(ipv4Addresses) : Collections.emptyList();
+        }
+
+        public String getNetworkMode() {
+            return networkMode;
+        }
+
+        public List<String> getIpv4Addresses() {
+            return Collections.unmodifiableList(ipv4Addresses);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{");
+            if (getNetworkMode() != null) {
+                sb.append("NetworkMode: ").append(getNetworkMode()).append(",");
+            }
+            if (getIpv4Addresses() != null) {
+                sb.append("IPv4Addresses: ").append(getIpv4Addresses());
+            }
+            sb.append("}");
+            return sb.toString();
+        }
+
+    }
+
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What {@link AmazonECSDiscoveryUtils#bootstrap} discovered about the ECS task this process is running in: everything
+ * needed to configure Hazelcast before it starts.
+ */
+public final class AmazonECSBootstrap {
+
+    private final AmazonECSDiscoveryUtils.SelfIdentity identity;
+    private final String publicHazelcastAddress;
+
+    AmazonECSBootstrap(AmazonECSDiscoveryUtils.SelfIdentity identity, String publicHazelcastAddress) {
+        this.identity = identity;
+        this.publicHazelcastAddress = publicHazelcastAddress;
+    }
+
+    public String getClusterName() {
+        return identity.getClusterName();
+    }
+
+    /**
+     * @return the name of the ECS service the task belongs to, or null if it isn't part of a service
+     */
+    public String getServiceName() {
+        return identity.getServiceName();
+    }
+
+    public AmazonECSDiscoveryUtils.SelfIdentity getIdentity() {
+        return identity;
+    }
+
+    /**
+     * @return the address to pass to {@link com.hazelcast.config.NetworkConfig#setPublicAddress(java.lang.String)}
+     */
+    public String getPublicHazelcastAddress() {
+        return publicHazelcastAddress;
+    }
+
+    /**
+     * @return the {@link AmazonECSDiscoveryProperties#CLUSTER} and {@link AmazonECSDiscoveryProperties#SERVICE}
+     * properties for the discovery strategy, so that it doesn't discover them again when it starts
+     */
+    public Map<String, Comparable> getDiscoveryProperties() {
+        Map<String, Comparable> properties = new HashMap<>();
+        properties.put(AmazonECSDiscoveryProperties.CLUSTER.key(), getClusterName());
+        if (getServiceName() != null) {
+            properties.put(AmazonECSDiscoveryProperties.SERVICE.key(), getServiceName());
+        }
+        return properties;
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+/**
+ * The remote APIs called during discovery, as reported to {@link AmazonECSDiscoveryMetricsListener}s.
+ */
+public enum AmazonECSDiscoveryApi {
+
+    /** ECS ListTasks. */
+    LIST_TASKS,
+
+    /** ECS DescribeTasks. */
+    DESCRIBE_TASKS,
+
+    /** ECS DescribeContainerInstances. */
+    DESCRIBE_CONTAINER_INSTANCES,
+
+    /** ECS ListAttributes, reading the addresses of container instances from an attribute. */
+    LIST_ATTRIBUTES,
+
+    /** ECS ListContainerInstances, finding the active container instances when reading addresses from an attribute. */
+    LIST_CONTAINER_INSTANCES,
+
+    /** EC2 DescribeInstances. */
+    DESCRIBE_INSTANCES,
+
+    /** The ECS Agent Introspection API. */
+    AGENT_INTROSPECTION,
+
+    /** The ECS Task Metadata endpoint. */
+    TASK_METADATA,
+
+    /** SQS ReceiveMessage, polling for ECS task state change events. */
+    RECEIVE_TASK_EVENTS
+
+}
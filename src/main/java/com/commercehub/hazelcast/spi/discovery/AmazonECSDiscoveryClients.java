@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.regions.AwsEnvVarOverrideRegionProvider;
+import com.amazonaws.regions.AwsProfileRegionProvider;
+import com.amazonaws.regions.AwsRegionProvider;
+import com.amazonaws.regions.AwsRegionProviderChain;
+import com.amazonaws.regions.AwsSystemPropertyRegionProvider;
+import com.amazonaws.regions.InstanceMetadataRegionProvider;
+import com.amazonaws.retry.PredefinedBackoffStrategies;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.AmazonEC2ClientBuilder;
+import com.amazonaws.services.ecs.AmazonECS;
+import com.amazonaws.services.ecs.AmazonECSClientBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The ECS and EC2 clients used by strategies that weren't given any, built once and shared by all strategies in the
+ * JVM. Unlike the SDK defaults, they are tuned for a discovery loop that runs small, latency-sensitive calls:
+ * <ul>
+ *     <li>the connection pool fits a strategy's concurrent describe calls, and idle connections are kept alive;</li>
+ *     <li>connect, socket and request timeouts are short, so a stuck call fails fast and is retried by the next
+ *     discovery rather than blocking it for minutes;</li>
+ *     <li>responses are gzipped, since describe responses for large clusters are big, repetitive JSON/XML;</li>
+ *     <li>server errors are retried a couple of times with jittered backoff, but throttling errors are not, since
+ *     {@link AmazonECSDiscoveryThrottle} already backs off from them across all calls in the JVM;</li>
+ *     <li>the region comes from the environment, or from the instance metadata of the container instance.</li>
+ * </ul>
+ */
+final class AmazonECSDiscoveryClients {
+
+    static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    static final int SOCKET_TIMEOUT_MILLIS = 5000;
+    static final int REQUEST_TIMEOUT_MILLIS = 10000;
+    static final long CONNECTION_TTL_MILLIS = 60000;
+    static final int MAX_ERROR_RETRY = 2;
+    static final int RETRY_BASE_DELAY_MILLIS = 50;
+    static final int RETRY_MAX_BACKOFF_MILLIS = 1000;
+
+    /**
+     * Connections beyond the discovery parallelism, for the list calls of each source and the self identity lookups.
+     */
+    static final int EXTRA_CONNECTIONS = 4;
+
+    private static final Log log = LogFactory.getLog(AmazonECSDiscoveryClients.class);
+
+    private static AmazonECSDiscoveryClients shared;
+
+    private final AmazonECS ecsClient;
+    private final AmazonEC2 ec2Client;
+
+    private AmazonECSDiscoveryClients(AmazonECS ecsClient, AmazonEC2 ec2Client) {
+        this.ecsClient = ecsClient;
+        this.ec2Client = ec2Client;
+    }
+
+    /**
+     * Returns the clients shared by all strategies in the JVM, building them on first use.
+     *
+     * @param discoveryParallelism the number of concurrent describe calls of the strategy; the connection pool is
+     *                             sized for the first caller
+     */
+    static synchronized AmazonECSDiscoveryClients shared(int discoveryParallelism) {
+        if (shared == null) {
+            ClientConfiguration clientConfiguration = newClientConfiguration(discoveryParallelism);
+            String region = discoverRegion();
+            AmazonECSClientBuilder ecsClientBuilder =
+                    AmazonECSClientBuilder.standard().withClientConfiguration(clientConfiguration);
+            AmazonEC2ClientBuilder ec2ClientBuilder =
+                    AmazonEC2ClientBuilder.standard().withClientConfiguration(clientConfiguration);
+            if (region != null) {
+                ecsClientBuilder.setRegion(region);
+                ec2ClientBuilder.setRegion(region);
+            }
+            shared = new AmazonECSDiscoveryClients(ecsClientBuilder.build(), ec2ClientBuilder.build());
+        }
+        return shared;
+    }
+
+    AmazonECS getEcsClient() {
+        return ecsClient;
+    }
+
+    AmazonEC2 getEc2Client() {
+        return ec2Client;
+    }
+
+    static ClientConfiguration newClientConfiguration(int discoveryParallelism) {
+        return new ClientConfiguration()
+                .withMaxConnections(Math.max(1, discoveryParallelism) + EXTRA_CONNECTIONS)
+                .withConnectionTimeout(CONNECT_TIMEOUT_MILLIS)
+                .withSocketTimeout(SOCKET_TIMEOUT_MILLIS)
+                .withRequestTimeout(REQUEST_TIMEOUT_MILLIS)
+                .withConnectionTTL(CONNECTION_TTL_MILLIS)
+                .withTcpKeepAlive(true)
+                .withGzip(true)
+                .withRetryPolicy(newRetryPolicy());
+    }
+
+    /**
+     * @return a policy retrying the SDK's retryable errors, except throttling errors, a few times with full jitter
+     */
+    static RetryPolicy newRetryPolicy() {
+        return new RetryPolicy(
+                (request, exception, retriesAttempted) -> !RetryUtils.isThrottlingException(exception) &&
+                        PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(
+                                request, exception, retriesAttempted),
+                new PredefinedBackoffStrategies.FullJitterBackoffStrategy(
+                        RETRY_BASE_DELAY_MILLIS, RETRY_MAX_BACKOFF_MILLIS),
+                MAX_ERROR_RETRY,
+                true);
+    }
+
+    /**
+     * @return the region from the environment, system properties or AWS profile, or else from the instance metadata
+     * of the EC2 instance this process runs on; null if none of them provides one
+     */
+    static String discoverRegion() {
+        AwsRegionProvider regionProvider = new AwsRegionProviderChain(
+                new AwsEnvVarOverrideRegionProvider(),
+                new AwsSystemPropertyRegionProvider(),
+                new AwsProfileRegionProvider(),
+                new InstanceMetadataRegionProvider());
+        try {
+            String region = regionProvider.getRegion();
+            log.debug("Building discovery clients for region " + region);
+            return region;
+        } catch (SdkClientException e) {
+            log.warn("Unable to determine the region of the discovery clients; using the SDK's default", e);
+            return null;
+        }
+    }
+
+}
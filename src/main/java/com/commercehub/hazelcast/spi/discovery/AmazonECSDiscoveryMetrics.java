@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * JVM-wide registry of {@link AmazonECSDiscoveryMetricsListener}s, which all discovery instrumentation reports to.<br>
+ *
+ * The built-in {@link AmazonECSDiscoveryStats} listener is always registered and is exposed through JMX under
+ * {@value #OBJECT_NAME}.
+ */
+public final class AmazonECSDiscoveryMetrics {
+
+    public static final String OBJECT_NAME = "com.commercehub.hazelcast.spi.discovery:type=AmazonECSDiscoveryStats";
+
+    private static final Log log = LogFactory.getLog(AmazonECSDiscoveryMetrics.class);
+
+    private static final AmazonECSDiscoveryStats stats = new AmazonECSDiscoveryStats();
+    private static final List<AmazonECSDiscoveryMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    static {
+        listeners.add(stats);
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            log.warn("Unable to register discovery stats MBean " + OBJECT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    private AmazonECSDiscoveryMetrics() {
+    }
+
+    public static void addListener(AmazonECSDiscoveryMetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(AmazonECSDiscoveryMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the built-in listener that aggregates all metrics reported in this JVM
+     */
+    public static AmazonECSDiscoveryStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Makes a remote API call, reporting its duration and outcome.
+     */
+    static <T> T record(AmazonECSDiscoveryApi api, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            apiCall(api, System.nanoTime() - start, null);
+            return result;
+        } catch (RuntimeException e) {
+            apiCall(api, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    static void apiCall(AmazonECSDiscoveryApi api, long durationNanos, Throwable error) {
+        for (AmazonECSDiscoveryMetricsListener listener : listeners) {
+            try {
+                listener.onApiCall(api, durationNanos, error);
+            } catch (RuntimeException e) {
+                log.debug("Discovery metrics listener failed", e);
+            }
+        }
+    }
+
+    static void cacheLookup(boolean hit) {
+        for (AmazonECSDiscoveryMetricsListener listener : listeners) {
+            try {
+                listener.onCacheLookup(hit);
+            } catch (RuntimeException e) {
+                log.debug("Discovery metrics listener failed", e);
+            }
+        }
+    }
+
+    static void discovery(int nodes, int nodesAdded, int nodesRemoved, long durationNanos) {
+        for (AmazonECSDiscoveryMetricsListener listener : listeners) {
+            try {
+                listener.onDiscovery(nodes, nodesAdded, nodesRemoved, durationNanos);
+            } catch (RuntimeException e) {
+                log.debug("Discovery metrics listener failed", e);
+            }
+        }
+    }
+
+    static void sourceDiscovery(String source, int nodes, long durationNanos) {
+        for (AmazonECSDiscoveryMetricsListener listener : listeners) {
+            try {
+                listener.onSourceDiscovery(source, nodes, durationNanos);
+            } catch (RuntimeException e) {
+                log.debug("Discovery metrics listener failed", e);
+            }
+        }
+    }
+
+    static void snapshotServed(long ageMillis) {
+        for (AmazonECSDiscoveryMetricsListener listener : listeners) {
+            try {
+                listener.onSnapshotServed(ageMillis);
+            } catch (RuntimeException e) {
+                log.debug("Discovery metrics listener failed", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+/**
+ * Receives discovery metrics. Register implementations with {@link AmazonECSDiscoveryMetrics#addListener}.<br>
+ *
+ * Listeners are called synchronously on discovery threads, so implementations must be thread-safe and cheap.
+ */
+public interface AmazonECSDiscoveryMetricsListener {
+
+    /**
+     * Called after each remote API call.
+     *
+     * @param api the API that was called
+     * @param durationNanos how long the call took
+     * @param error the exception the call failed with, or null if it succeeded
+     */
+    default void onApiCall(AmazonECSDiscoveryApi api, long durationNanos, Throwable error) {
+    }
+
+    /**
+     * Called for each container instance address lookup in the container instance address cache.
+     */
+    default void onCacheLookup(boolean hit) {
+    }
+
+    /**
+     * Called after each discovery of the nodes in the ECS cluster/service.
+     *
+     * @param nodes the number of nodes discovered
+     * @param nodesAdded the number of nodes that were not discovered by the previous discovery
+     * @param nodesRemoved the number of nodes discovered previously that are gone
+     * @param durationNanos how long the discovery took
+     */
+    default void onDiscovery(int nodes, int nodesAdded, int nodesRemoved, long durationNanos) {
+    }
+
+    /**
+     * Called after the nodes in each discovery source (an ECS cluster, service or task family) have been discovered.
+     *
+     * @param source the discovery source, e.g. {@code cluster/service}
+     * @param nodes the number of nodes discovered in the source
+     * @param durationNanos how long discovery of the source took
+     */
+    default void onSourceDiscovery(String source, int nodes, long durationNanos) {
+    }
+
+    /**
+     * Called when discovered nodes are served from a background refresh snapshot.
+     *
+     * @param ageMillis the age of the snapshot
+     */
+    default void onSnapshotServed(long ageMillis) {
+    }
+
+}
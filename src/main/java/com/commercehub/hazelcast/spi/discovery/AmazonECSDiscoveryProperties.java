@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.hazelcast.config.properties.PropertyDefinition;
+import com.hazelcast.config.properties.PropertyTypeConverter;
+import com.hazelcast.config.properties.SimplePropertyDefinition;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Configuration properties for the {@link AmazonECSDiscoveryStrategy}. All properties are optional; the defaults
+ * are listed alongside each property.
+ */
+public final class AmazonECSDiscoveryProperties {
+
+    /**
+     * Port Hazelcast listens on inside each container. Overrides the port passed to the
+     * {@link AmazonECSDiscoveryStrategyFactory} constructor. Default: 5701.
+     */
+    public static final PropertyDefinition CONTAINER_PORT =
+            property("container-port", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_CONTAINER_PORT = 5701;
+
+    /**
+     * Name of the ECS cluster to discover nodes in. When set, the cluster is not looked up from the ECS agent or the
+     * task metadata endpoint, and only tasks in {@link #SERVICE} (or in the whole cluster if that isn't set) are
+     * discovered. Default: the cluster the current task runs in.
+     */
+    public static final PropertyDefinition CLUSTER =
+            property("cluster", PropertyTypeConverter.STRING);
+
+    /**
+     * Name of the ECS service to discover nodes in. Default: the service the current task belongs to, or all tasks
+     * in the cluster if it doesn't belong to one.
+     */
+    public static final PropertyDefinition SERVICE =
+            property("service", PropertyTypeConverter.STRING);
+
+    /**
+     * Comma-separated list of the ECS clusters, services and task families to discover nodes in, for Hazelcast
+     * clusters that span several ECS services or clusters. Each source is either {@code cluster},
+     * {@code cluster/service} or {@code cluster/family:taskFamily}; all sources are discovered concurrently.
+     * Overrides {@link #CLUSTER} and {@link #SERVICE}. Default: none.
+     */
+    public static final PropertyDefinition SOURCES =
+            property("sources", PropertyTypeConverter.STRING);
+
+    /**
+     * How the address of a task is resolved: {@code bridge} uses the private IP address of the task's container
+     * instance and the host port mapped to the container port, {@code awsvpc} uses the private IP address of the
+     * task's network interface and the container port, and {@code auto} picks one per task. Default: auto.
+     */
+    public static final PropertyDefinition NETWORK_MODE =
+            property("network-mode", PropertyTypeConverter.STRING);
+    static final String DEFAULT_NETWORK_MODE = "auto";
+
+    /**
+     * How the private IP addresses of the container instances hosting bridge mode tasks are resolved.
+     * {@code describe} describes the container instances and then their EC2 instances, in batches. {@code tag}
+     * describes each container instance only once, to learn its EC2 instance ID, and resolves the addresses of all
+     * EC2 instances with the {@link #HOST_TAG} in a single {@code describeInstances} call. {@code attribute} reads the
+     * addresses from the {@link #HOST_ADDRESS_ATTRIBUTE} of all container instances in a single
+     * {@code listAttributes} call, without describing container instances (so draining container instances are not
+     * skipped). Default: describe.
+     */
+    public static final PropertyDefinition HOST_RESOLUTION =
+            property("host-resolution", PropertyTypeConverter.STRING);
+    static final String DEFAULT_HOST_RESOLUTION = "describe";
+
+    /**
+     * Tag of the EC2 instances hosting the cluster, for {@code tag} host resolution: either {@code key=value}, or
+     * just {@code key} to match any value. Required for {@code tag} host resolution.
+     */
+    public static final PropertyDefinition HOST_TAG =
+            property("host-tag", PropertyTypeConverter.STRING);
+
+    /**
+     * Name of the custom container instance attribute holding the private IP address of the container instance, for
+     * {@code attribute} host resolution. Default: private-ip-address.
+     */
+    public static final PropertyDefinition HOST_ADDRESS_ATTRIBUTE =
+            property("host-address-attribute", PropertyTypeConverter.STRING);
+    static final String DEFAULT_HOST_ADDRESS_ATTRIBUTE = "private-ip-address";
+
+    /**
+     * How long (in seconds) the private IP address resolved for an ECS container instance is cached. Default: 3600.
+     * The EC2 instance ID of a container instance never changes and is cached without expiring, so an expired address
+     * is resolved again with a single {@code describeInstances} call.
+     */
+    public static final PropertyDefinition CONTAINER_INSTANCE_CACHE_TTL_SECONDS =
+            property("container-instance-cache-ttl-seconds", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_CONTAINER_INSTANCE_CACHE_TTL_SECONDS = 3600;
+
+    /**
+     * Maximum number of ECS container instances whose private IP address is cached; least recently used entries
+     * are evicted first. Default: 1000.
+     */
+    public static final PropertyDefinition CONTAINER_INSTANCE_CACHE_MAX_SIZE =
+            property("container-instance-cache-max-size", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_CONTAINER_INSTANCE_CACHE_MAX_SIZE = 1000;
+
+    /**
+     * Interval (in seconds) at which a background thread refreshes the discovered nodes. When greater than zero,
+     * {@link AmazonECSDiscoveryStrategy#discoverNodes()} returns the most recent snapshot instead of querying ECS.
+     * Default: 0 (disabled).
+     */
+    public static final PropertyDefinition BACKGROUND_REFRESH_INTERVAL_SECONDS =
+            property("background-refresh-interval-seconds", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_BACKGROUND_REFRESH_INTERVAL_SECONDS = 0;
+
+    /**
+     * Maximum age (in seconds) of a background refresh snapshot; older snapshots are refreshed synchronously by
+     * {@link AmazonECSDiscoveryStrategy#discoverNodes()}. Only used when background refresh is enabled. Default: 60.
+     */
+    public static final PropertyDefinition MAX_SNAPSHOT_STALENESS_SECONDS =
+            property("max-snapshot-staleness-seconds", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_MAX_SNAPSHOT_STALENESS_SECONDS = 60;
+
+    /**
+     * Maximum number of ECS/EC2 describe calls a strategy instance makes concurrently. Default: 4.
+     */
+    public static final PropertyDefinition DISCOVERY_PARALLELISM =
+            property("discovery-parallelism", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_DISCOVERY_PARALLELISM = 4;
+
+    /**
+     * Which of the tasks in the cluster/service are discovered as nodes. Tasks whose desired status isn't RUNNING
+     * (i.e. that are being stopped) are never discovered. {@code running} only discovers tasks that are RUNNING, not
+     * UNHEALTHY and not on a container instance that is DRAINING; {@code healthy} additionally requires a HEALTHY
+     * container health check, and {@code none} discovers all tasks. Default: running.
+     */
+    public static final PropertyDefinition TASK_FILTER =
+            property("task-filter", PropertyTypeConverter.STRING);
+    static final String DEFAULT_TASK_FILTER = "running";
+
+    /**
+     * Age (in seconds) after which a task discovered so far, and the container instance hosting it, are described
+     * again, so that tasks that stop passing the {@link #TASK_FILTER task filter} after they were first discovered
+     * (e.g. become UNHEALTHY, or their container instance starts DRAINING) are dropped. Each known task is described
+     * again at most once per interval, which costs about one DescribeTasks call per 100 tasks, and one
+     * DescribeContainerInstances call per 100 of their container instances, per interval. Ignored with the task filter
+     * {@code none}; 0 disables revalidation. Default: 300.
+     */
+    public static final PropertyDefinition REVALIDATION_INTERVAL_SECONDS =
+            property("revalidation-interval-seconds", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_REVALIDATION_INTERVAL_SECONDS = 300;
+
+    /**
+     * Maximum number of task ARNs requested per {@code listTasks} page, and of ARNs/IDs per ECS/EC2 describe call.
+     * Values above 100, the maximum the APIs accept, are capped. Default: 100.
+     */
+    public static final PropertyDefinition BATCH_SIZE =
+            property("batch-size", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_BATCH_SIZE = AmazonECSDiscoveryStrategy.MAX_DESCRIBE_BATCH_SIZE;
+
+    /**
+     * Maximum rate (per second) of ECS/EC2 calls, shared by all strategies in the JVM configured with the same rate
+     * and burst. Default: 20.
+     */
+    public static final PropertyDefinition RATE_LIMIT_PER_SECOND =
+            property("rate-limit-per-second", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_RATE_LIMIT_PER_SECOND = (int) AmazonECSDiscoveryThrottle.DEFAULT_REQUESTS_PER_SECOND;
+
+    /**
+     * Number of ECS/EC2 calls that may be made in a burst before {@link #RATE_LIMIT_PER_SECOND} applies. Default: 40.
+     */
+    public static final PropertyDefinition RATE_LIMIT_BURST =
+            property("rate-limit-burst", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_RATE_LIMIT_BURST = AmazonECSDiscoveryThrottle.DEFAULT_BURST;
+
+    /**
+     * Maximum number of attempts of a throttled ECS/EC2 call, including the first one. Default: 5.
+     */
+    public static final PropertyDefinition MAX_ATTEMPTS =
+            property("max-attempts", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_MAX_ATTEMPTS = AmazonECSDiscoveryThrottle.DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Minimum delay (in milliseconds) before retrying a throttled ECS/EC2 call. Default: 100.
+     */
+    public static final PropertyDefinition RETRY_BASE_DELAY_MILLIS =
+            property("retry-base-delay-millis", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_RETRY_BASE_DELAY_MILLIS = (int) AmazonECSDiscoveryThrottle.DEFAULT_BASE_DELAY_MILLIS;
+
+    /**
+     * Maximum delay (in milliseconds) before retrying a throttled ECS/EC2 call. Default: 10000.
+     */
+    public static final PropertyDefinition RETRY_MAX_DELAY_MILLIS =
+            property("retry-max-delay-millis", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_RETRY_MAX_DELAY_MILLIS = (int) AmazonECSDiscoveryThrottle.DEFAULT_MAX_DELAY_MILLIS;
+
+    /**
+     * Path of a file the last successfully discovered nodes are written to. On startup, the nodes in this file are
+     * used until discovery succeeds, so a restarting member can join its cluster right away; put it on a volume that
+     * outlives the container. Default: none (disabled).
+     */
+    public static final PropertyDefinition SNAPSHOT_FILE =
+            property("snapshot-file", PropertyTypeConverter.STRING);
+
+    /**
+     * ARN of an SNS topic an EventBridge/CloudWatch Events rule publishes "ECS Task State Change" events to. When set,
+     * each member creates an SQS queue of its own subscribed to the topic (deleted again on shutdown), membership
+     * changes are applied as the events arrive, and the cluster/service is only fully listed every
+     * {@link #EVENT_RECONCILIATION_INTERVAL_SECONDS} to catch missed events. Default: none (disabled).
+     */
+    public static final PropertyDefinition EVENT_TOPIC_ARN =
+            property("event-topic-arn", PropertyTypeConverter.STRING);
+
+    /**
+     * Interval (in seconds) between full discoveries when membership is kept up to date by task state change events.
+     * Default: 300.
+     */
+    public static final PropertyDefinition EVENT_RECONCILIATION_INTERVAL_SECONDS =
+            property("event-reconciliation-interval-seconds", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_EVENT_RECONCILIATION_INTERVAL_SECONDS = 300;
+
+    /**
+     * Path of a file on storage shared by all members (e.g. an EFS volume) through which one member publishes the
+     * nodes it discovered to the others, so that only one member queries ECS/EC2 at a time. Default: none (every
+     * member discovers nodes itself).
+     */
+    public static final PropertyDefinition SHARED_STORE_FILE =
+            property("shared-store-file", PropertyTypeConverter.STRING);
+
+    /**
+     * Maximum age (in seconds) of nodes published to the shared store before other members stop using them and
+     * discover nodes themselves. Should be well above the interval at which the leading member discovers nodes.
+     * Default: 30.
+     */
+    public static final PropertyDefinition SHARED_STORE_TTL_SECONDS =
+            property("shared-store-ttl-seconds", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_SHARED_STORE_TTL_SECONDS = 30;
+
+    /**
+     * Maximum time (in seconds) the strategy waits on start for each lookup of this process's cluster and/or service
+     * name, when they aren't configured. Default: 60.
+     */
+    public static final PropertyDefinition STARTUP_TIMEOUT_SECONDS =
+            property("startup-timeout-seconds", PropertyTypeConverter.INTEGER);
+    static final int DEFAULT_STARTUP_TIMEOUT_SECONDS = 60;
+
+    static final Collection<PropertyDefinition> ALL = Collections.unmodifiableList(Arrays.asList(
+            CONTAINER_PORT,
+            CLUSTER,
+            SERVICE,
+            SOURCES,
+            NETWORK_MODE,
+            HOST_RESOLUTION,
+            HOST_TAG,
+            HOST_ADDRESS_ATTRIBUTE,
+            TASK_FILTER,
+            REVALIDATION_INTERVAL_SECONDS,
+            CONTAINER_INSTANCE_CACHE_TTL_SECONDS,
+            CONTAINER_INSTANCE_CACHE_MAX_SIZE,
+            BACKGROUND_REFRESH_INTERVAL_SECONDS,
+            MAX_SNAPSHOT_STALENESS_SECONDS,
+            DISCOVERY_PARALLELISM,
+            BATCH_SIZE,
+            RATE_LIMIT_PER_SECOND,
+            RATE_LIMIT_BURST,
+            MAX_ATTEMPTS,
+            RETRY_BASE_DELAY_MILLIS,
+            RETRY_MAX_DELAY_MILLIS,
+            SNAPSHOT_FILE,
+            EVENT_TOPIC_ARN,
+            EVENT_RECONCILIATION_INTERVAL_SECONDS,
+            SHARED_STORE_FILE,
+            SHARED_STORE_TTL_SECONDS,
+            STARTUP_TIMEOUT_SECONDS));
+
+    private AmazonECSDiscoveryProperties() {
+    }
+
+    private static PropertyDefinition property(String key, PropertyTypeConverter typeConverter) {
+        return new SimplePropertyDefinition(key, true, typeConverter);
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Aggregates discovery metrics using striped counters and fixed, power-of-two millisecond latency buckets, so that
+ * recording is cheap enough to stay enabled in production.
+ */
+public class AmazonECSDiscoveryStats implements AmazonECSDiscoveryMetricsListener, AmazonECSDiscoveryStatsMXBean {
+
+    /** Upper bounds (inclusive, in milliseconds) of all but the last latency bucket: 1, 2, 4, ..., 8192. */
+    private static final int LATENCY_BUCKETS = 15;
+
+    private final Map<AmazonECSDiscoveryApi, ApiStats> apiStats = new EnumMap<>(AmazonECSDiscoveryApi.class);
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder discoveries = new LongAdder();
+    private final LongAdder nodesAdded = new LongAdder();
+    private final LongAdder nodesRemoved = new LongAdder();
+    private volatile int lastNodesDiscovered;
+    private volatile long lastDiscoveryDurationNanos;
+    private volatile long lastSnapshotAgeMillis = -1;
+    private final Map<String, Integer> sourceLastNodesDiscovered = new ConcurrentHashMap<>();
+    private final Map<String, Long> sourceLastDiscoveryDurationNanos = new ConcurrentHashMap<>();
+
+    AmazonECSDiscoveryStats() {
+        for (AmazonECSDiscoveryApi api : AmazonECSDiscoveryApi.values()) {
+            apiStats.put(api, new ApiStats());
+        }
+    }
+
+    @Override
+    public void onApiCall(AmazonECSDiscoveryApi api, long durationNanos, Throwable error) {
+        ApiStats stats = apiStats.get(api);
+        stats.calls.increment();
+        stats.totalLatencyNanos.add(durationNanos);
+        stats.latencyBuckets[bucket(durationNanos)].increment();
+
+        if (error != null) {
+            stats.errors.increment();
+            if (error instanceof AmazonServiceException
+                    && RetryUtils.isThrottlingException((AmazonServiceException) error)) {
+                stats.throttles.increment();
+            }
+        }
+    }
+
+    @Override
+    public void onCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    @Override
+    public void onDiscovery(int nodes, int nodesAdded, int nodesRemoved, long durationNanos) {
+        discoveries.increment();
+        this.nodesAdded.add(nodesAdded);
+        this.nodesRemoved.add(nodesRemoved);
+        lastNodesDiscovered = nodes;
+        lastDiscoveryDurationNanos = durationNanos;
+    }
+
+    @Override
+    public void onSourceDiscovery(String source, int nodes, long durationNanos) {
+        sourceLastNodesDiscovered.put(source, nodes);
+        sourceLastDiscoveryDurationNanos.put(source, durationNanos);
+    }
+
+    @Override
+    public void onSnapshotServed(long ageMillis) {
+        lastSnapshotAgeMillis = ageMillis;
+    }
+
+    @Override
+    public Map<String, Long> getApiCallCounts() {
+        return collect(stats -> stats.calls.sum());
+    }
+
+    @Override
+    public Map<String, Long> getApiErrorCounts() {
+        return collect(stats -> stats.errors.sum());
+    }
+
+    @Override
+    public Map<String, Long> getApiThrottleCounts() {
+        return collect(stats -> stats.throttles.sum());
+    }
+
+    @Override
+    public Map<String, Double> getApiMeanLatencyMillis() {
+        return collect(stats -> {
+            long calls = stats.calls.sum();
+            return calls > 0 ? stats.totalLatencyNanos.sum() / (double) calls / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+        });
+    }
+
+    @Override
+    public Map<String, String> getApiLatencyHistograms() {
+        return collect(stats -> {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(i < LATENCY_BUCKETS - 1 ? "<=" + (1 << i) + "ms:" : ">" + (1 << (i - 1)) + "ms:")
+                        .append(stats.latencyBuckets[i].sum());
+            }
+            return sb.toString();
+        });
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getDiscoveries() {
+        return discoveries.sum();
+    }
+
+    @Override
+    public int getLastNodesDiscovered() {
+        return lastNodesDiscovered;
+    }
+
+    @Override
+    public long getNodesAdded() {
+        return nodesAdded.sum();
+    }
+
+    @Override
+    public long getNodesRemoved() {
+        return nodesRemoved.sum();
+    }
+
+    @Override
+    public long getLastDiscoveryDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastDiscoveryDurationNanos);
+    }
+
+    @Override
+    public Map<String, Integer> getSourceLastNodesDiscovered() {
+        return new TreeMap<>(sourceLastNodesDiscovered);
+    }
+
+    @Override
+    public Map<String, Long> getSourceLastDiscoveryDurationMillis() {
+        Map<String, Long> durations = new TreeMap<>();
+        sourceLastDiscoveryDurationNanos.forEach(
+                (source, nanos) -> durations.put(source, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        return durations;
+    }
+
+    @Override
+    public long getLastSnapshotAgeMillis() {
+        return lastSnapshotAgeMillis;
+    }
+
+    private <T> Map<String, T> collect(Function<ApiStats, T> value) {
+        Map<String, T> values = new LinkedHashMap<>();
+        apiStats.forEach((api, stats) -> values.put(api.name(), value.apply(stats)));
+        return values;
+    }
+
+    /**
+     * @return the index of the latency bucket for the given duration; bucket i holds durations up to 2^i ms
+     */
+    static int bucket(long durationNanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        if (millis <= 1) {
+            return 0;
+        }
+        // Smallest i such that millis <= 2^i
+        int bucket = 64 - Long.numberOfLeadingZeros(millis - 1);
+        return Math.min(bucket, LATENCY_BUCKETS - 1);
+    }
+
+    private static final class ApiStats {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder throttles = new LongAdder();
+        private final LongAdder totalLatencyNanos = new LongAdder();
+        private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS];
+
+        private ApiStats() {
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                latencyBuckets[i] = new LongAdder();
+            }
+        }
+
+    }
+
+}
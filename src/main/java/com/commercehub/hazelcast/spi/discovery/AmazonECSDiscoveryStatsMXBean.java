@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import java.util.Map;
+
+/**
+ * JMX view of the discovery metrics aggregated by {@link AmazonECSDiscoveryStats}. API metrics are keyed by
+ * {@link AmazonECSDiscoveryApi} name.
+ */
+public interface AmazonECSDiscoveryStatsMXBean {
+
+    Map<String, Long> getApiCallCounts();
+
+    Map<String, Long> getApiErrorCounts();
+
+    Map<String, Long> getApiThrottleCounts();
+
+    Map<String, Double> getApiMeanLatencyMillis();
+
+    /**
+     * @return for each API, the number of calls per latency bucket, formatted as {@code <=1ms:n <=2ms:n ...}
+     */
+    Map<String, String> getApiLatencyHistograms();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getDiscoveries();
+
+    int getLastNodesDiscovered();
+
+    long getNodesAdded();
+
+    long getNodesRemoved();
+
+    long getLastDiscoveryDurationMillis();
+
+    /**
+     * @return for each discovery source, the number of nodes found by its last discovery
+     */
+    Map<String, Integer> getSourceLastNodesDiscovered();
+
+    /**
+     * @return for each discovery source, how long its last discovery took
+     */
+    Map<String, Long> getSourceLastDiscoveryDurationMillis();
+
+    /**
+     * @return the age of the last background refresh snapshot served, or -1 if none has been served
+     */
+    long getLastSnapshotAgeMillis();
+
+}
@@ -18,86 +18,1114 @@ package com.commercehub.hazelcast.spi.discovery;
 
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Filter;
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.Reservation;
 import com.amazonaws.services.ecs.AmazonECS;
+import com.amazonaws.services.ecs.model.Attachment;
+import com.amazonaws.services.ecs.model.Attribute;
 import com.amazonaws.services.ecs.model.Container;
 import com.amazonaws.services.ecs.model.ContainerInstance;
 import com.amazonaws.services.ecs.model.DescribeContainerInstancesRequest;
 import com.amazonaws.services.ecs.model.DescribeTasksRequest;
+import com.amazonaws.services.ecs.model.DesiredStatus;
+import com.amazonaws.services.ecs.model.KeyValuePair;
+import com.amazonaws.services.ecs.model.ListAttributesRequest;
+import com.amazonaws.services.ecs.model.ListAttributesResult;
+import com.amazonaws.services.ecs.model.ListContainerInstancesRequest;
+import com.amazonaws.services.ecs.model.ListContainerInstancesResult;
 import com.amazonaws.services.ecs.model.ListTasksRequest;
+import com.amazonaws.services.ecs.model.ListTasksResult;
 import com.amazonaws.services.ecs.model.NetworkBinding;
+import com.amazonaws.services.ecs.model.NetworkInterface;
+import com.amazonaws.services.ecs.model.TargetType;
 import com.amazonaws.services.ecs.model.Task;
+import com.hazelcast.config.InvalidConfigurationException;
+import com.hazelcast.config.properties.PropertyDefinition;
 import com.hazelcast.logging.ILogger;
 import com.hazelcast.nio.Address;
 import com.hazelcast.spi.discovery.AbstractDiscoveryStrategy;
 import com.hazelcast.spi.discovery.DiscoveryNode;
 import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
 
+import java.io.IOException;
 import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class AmazonECSDiscoveryStrategy extends AbstractDiscoveryStrategy {
 
+    /** Maximum number of ARNs/IDs the ECS and EC2 describe APIs accept in a single request. */
+    static final int MAX_DESCRIBE_BATCH_SIZE = 100;
+
+    /** Maximum number of EC2 instances per page of a filtered {@code describeInstances} call. */
+    static final int MAX_DESCRIBE_INSTANCES_PAGE_SIZE = 1000;
+
+    private static final String ENI_ATTACHMENT_TYPE = "ElasticNetworkInterface";
+    private static final String ENI_PRIVATE_IPV4_ADDRESS_DETAIL = "privateIPv4Address";
+
+    private static final String RUNNING_STATUS = "RUNNING";
+    private static final String HEALTHY_STATUS = "HEALTHY";
+    private static final String UNHEALTHY_STATUS = "UNHEALTHY";
+    private static final String ACTIVE_STATUS = "ACTIVE";
+    private static final String STOPPED_STATUS = "STOPPED";
+
+    /** Maximum time (in seconds) a single poll for task state change events waits. */
+    private static final long TASK_EVENT_POLL_SECONDS = 20;
+
+    /** Maximum number of stopped task ARNs remembered, so that late events for them are ignored. */
+    private static final int MAX_STOPPED_TASK_ARNS = 10_000;
+
     private final AmazonECS ecsClient;
     private final AmazonEC2 ec2Client;
     private final int containerPort;
+    private final NetworkMode networkMode;
+    private final TaskFilter taskFilter;
+    private final long revalidationIntervalNanos;
+    /** Clock that tasks are revalidated by; replaced by tests. */
+    private LongSupplier nanoClock = System::nanoTime;
+    private final HostResolution hostResolution;
+    private final Filter hostTagFilter;
+    private final String hostAddressAttribute;
+    private final int batchSize;
 
     private final AmazonECSDiscoveryUtils amazonECSDiscoveryUtils;
+    private final ExecutorService executor;
+    private final ExecutorService sourceExecutor;
+    private final ContainerInstanceAddressCache containerInstanceAddressCache;
+
+    private final long startupTimeoutSeconds;
+    private final long backgroundRefreshIntervalSeconds;
+    private final long maxSnapshotStalenessMillis;
+    private final AtomicReference<DiscoveryNodeSnapshot> nodeSnapshot = new AtomicReference<>();
+    private volatile ScheduledExecutorService refresher;
+    private final AmazonECSDiscoveryThrottle throttle;
 
-    private String clusterName;
-    private String serviceName;
+    private final DiscoveryNodeSnapshotFile snapshotFile;
+    private final LongAdder failures = new LongAdder();
+    /** Calls submitted to the executors that haven't completed yet, which are cancelled on {@link #destroy()}. */
+    private final Set<CompletableFuture<?>> pendingCalls = ConcurrentHashMap.newKeySet();
+    private volatile List<DiscoveryNode> lastKnownGoodNodes = Collections.emptyList();
+    /** The last known good nodes by {@code ipAddress:port}, for reusing the nodes of unchanged endpoints. */
+    private volatile Map<String, DiscoveryNode> lastKnownGoodNodesByEndpoint = Collections.emptyMap();
 
+    private final String clusterOverride;
+    private final String serviceOverride;
+    private final boolean sourcesConfigured;
+    private volatile List<DiscoverySource> sources;
+
+    private final AmazonECSTaskEventSource taskEventSource;
+    private final Object membershipLock = new Object();
+    /** Version of the last task state change event applied, by task ARN; guarded by the membership lock. */
+    private final Map<String, Long> taskEventVersions = new HashMap<>();
+    /** ARNs of tasks known to have stopped, which never run again; least recently stopped are forgotten first. */
+    private final Map<String, Boolean> stoppedTaskArns = Collections.synchronizedMap(
+            new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_STOPPED_TASK_ARNS;
+                }
+            });
+    private volatile boolean reconciled;
+    private volatile ExecutorService taskEventListener;
+
+    private final SharedDiscoveryCoordinator sharedDiscovery;
+
+    /**
+     * @param containerPort the port Hazelcast listens on inside each container, unless overridden by the
+     * {@link AmazonECSDiscoveryProperties#CONTAINER_PORT} property
+     */
     public AmazonECSDiscoveryStrategy(ILogger logger,
                                       Map<String, Comparable> properties,
                                       AmazonECS ecsClient,
                                       AmazonEC2 ec2Client,
                                       int containerPort) {
+        this(logger, properties, ecsClient, ec2Client, containerPort, null);
+    }
+
+    /**
+     * @param containerPort the port Hazelcast listens on inside each container, unless overridden by the
+     * {@link AmazonECSDiscoveryProperties#CONTAINER_PORT} property
+     * @param taskEventSource the source of ECS task state change events to keep membership up to date with, or null
+     * to subscribe a queue of this member to {@link AmazonECSDiscoveryProperties#EVENT_TOPIC_ARN} if set
+     */
+    public AmazonECSDiscoveryStrategy(ILogger logger,
+                                      Map<String, Comparable> properties,
+                                      AmazonECS ecsClient,
+                                      AmazonEC2 ec2Client,
+                                      int containerPort,
+                                      AmazonECSTaskEventSource taskEventSource) {
+        this(logger, properties, ecsClient, ec2Client, containerPort, taskEventSource, null);
+    }
+
+    /**
+     * @param containerPort the port Hazelcast listens on inside each container, unless overridden by the
+     * {@link AmazonECSDiscoveryProperties#CONTAINER_PORT} property
+     * @param taskEventSource the source of ECS task state change events to keep membership up to date with, or null
+     * to subscribe a queue of this member to {@link AmazonECSDiscoveryProperties#EVENT_TOPIC_ARN} if set
+     * @param sharedStore the store through which members share discovered nodes, or null to use a file if
+     * {@link AmazonECSDiscoveryProperties#SHARED_STORE_FILE} is set
+     */
+    public AmazonECSDiscoveryStrategy(ILogger logger,
+                                      Map<String, Comparable> properties,
+                                      AmazonECS ecsClient,
+                                      AmazonEC2 ec2Client,
+                                      int containerPort,
+                                      AmazonECSTaskEventSource taskEventSource,
+                                      SharedDiscoveryStore sharedStore) {
         super(logger, properties);
 
         this.ecsClient = ecsClient;
         this.ec2Client = ec2Client;
-        this.containerPort = containerPort;
+        this.containerPort = getOrDefault(AmazonECSDiscoveryProperties.CONTAINER_PORT, containerPort);
+        this.networkMode = parseEnum(NetworkMode.class, AmazonECSDiscoveryProperties.NETWORK_MODE,
+                AmazonECSDiscoveryProperties.DEFAULT_NETWORK_MODE);
+        this.taskFilter = parseEnum(TaskFilter.class, AmazonECSDiscoveryProperties.TASK_FILTER,
+                AmazonECSDiscoveryProperties.DEFAULT_TASK_FILTER);
+        this.revalidationIntervalNanos = taskFilter == TaskFilter.NONE ? 0 : TimeUnit.SECONDS.toNanos(Math.max(0,
+                getOrDefault(AmazonECSDiscoveryProperties.REVALIDATION_INTERVAL_SECONDS,
+                        AmazonECSDiscoveryProperties.DEFAULT_REVALIDATION_INTERVAL_SECONDS)));
+        this.hostResolution = parseEnum(HostResolution.class, AmazonECSDiscoveryProperties.HOST_RESOLUTION,
+                AmazonECSDiscoveryProperties.DEFAULT_HOST_RESOLUTION);
+        String hostTag = getOrDefault(AmazonECSDiscoveryProperties.HOST_TAG, null);
+        if (hostResolution == HostResolution.TAG && (hostTag == null || hostTag.trim().isEmpty())) {
+            throw new InvalidConfigurationException(AmazonECSDiscoveryProperties.HOST_TAG.key()
+                    + " is required for tag host resolution");
+        }
+        this.hostTagFilter = hostTag != null ? parseTagFilter(hostTag) : null;
+        this.hostAddressAttribute = getOrDefault(AmazonECSDiscoveryProperties.HOST_ADDRESS_ATTRIBUTE,
+                AmazonECSDiscoveryProperties.DEFAULT_HOST_ADDRESS_ATTRIBUTE);
+        this.batchSize = Math.max(1, Math.min(MAX_DESCRIBE_BATCH_SIZE, getOrDefault(
+                AmazonECSDiscoveryProperties.BATCH_SIZE, AmazonECSDiscoveryProperties.DEFAULT_BATCH_SIZE)));
+        this.clusterOverride = getOrDefault(AmazonECSDiscoveryProperties.CLUSTER, null);
+        this.serviceOverride = getOrDefault(AmazonECSDiscoveryProperties.SERVICE, null);
+
+        String configuredSources = getOrDefault(AmazonECSDiscoveryProperties.SOURCES, null);
+        this.sourcesConfigured = configuredSources != null && !configuredSources.trim().isEmpty();
+        this.sources = sourcesConfigured
+                ? DiscoverySource.parse(configuredSources)
+                : Collections.singletonList(new DiscoverySource(clusterOverride, serviceOverride, null));
+        // Sources are resolved on their own threads, since resolving a source blocks on tasks run by the executor
+        this.sourceExecutor = sources.size() > 1 ? newBoundedExecutor(sources.size()) : null;
+
+        this.throttle = AmazonECSDiscoveryThrottle.shared(
+                getPositiveInt(AmazonECSDiscoveryProperties.RATE_LIMIT_PER_SECOND,
+                        AmazonECSDiscoveryProperties.DEFAULT_RATE_LIMIT_PER_SECOND),
+                getPositiveInt(AmazonECSDiscoveryProperties.RATE_LIMIT_BURST,
+                        AmazonECSDiscoveryProperties.DEFAULT_RATE_LIMIT_BURST),
+                getOrDefault(AmazonECSDiscoveryProperties.MAX_ATTEMPTS,
+                        AmazonECSDiscoveryProperties.DEFAULT_MAX_ATTEMPTS),
+                getOrDefault(AmazonECSDiscoveryProperties.RETRY_BASE_DELAY_MILLIS,
+                        AmazonECSDiscoveryProperties.DEFAULT_RETRY_BASE_DELAY_MILLIS),
+                getOrDefault(AmazonECSDiscoveryProperties.RETRY_MAX_DELAY_MILLIS,
+                        AmazonECSDiscoveryProperties.DEFAULT_RETRY_MAX_DELAY_MILLIS));
+
+        this.amazonECSDiscoveryUtils = new AmazonECSDiscoveryUtils(ecsClient, throttle);
+        this.executor = newBoundedExecutor(getOrDefault(AmazonECSDiscoveryProperties.DISCOVERY_PARALLELISM,
+                AmazonECSDiscoveryProperties.DEFAULT_DISCOVERY_PARALLELISM));
+        this.containerInstanceAddressCache = new ContainerInstanceAddressCache(
+                getOrDefault(AmazonECSDiscoveryProperties.CONTAINER_INSTANCE_CACHE_TTL_SECONDS,
+                        AmazonECSDiscoveryProperties.DEFAULT_CONTAINER_INSTANCE_CACHE_TTL_SECONDS),
+                TimeUnit.SECONDS,
+                getOrDefault(AmazonECSDiscoveryProperties.CONTAINER_INSTANCE_CACHE_MAX_SIZE,
+                        AmazonECSDiscoveryProperties.DEFAULT_CONTAINER_INSTANCE_CACHE_MAX_SIZE));
+
+        String eventTopicArn = getOrDefault(AmazonECSDiscoveryProperties.EVENT_TOPIC_ARN, null);
+        this.taskEventSource = taskEventSource != null || eventTopicArn == null
+                ? taskEventSource : AmazonSQSTaskEventSource.create(eventTopicArn);
 
-        this.amazonECSDiscoveryUtils = new AmazonECSDiscoveryUtils(ecsClient);
+        long maxSnapshotStalenessSeconds = getOrDefault(AmazonECSDiscoveryProperties.MAX_SNAPSHOT_STALENESS_SECONDS,
+                AmazonECSDiscoveryProperties.DEFAULT_MAX_SNAPSHOT_STALENESS_SECONDS);
+        if (this.taskEventSource != null) {
+            // Events keep the snapshot current, so full discoveries only reconcile it now and then
+            this.backgroundRefreshIntervalSeconds = Math.max(1, getOrDefault(
+                    AmazonECSDiscoveryProperties.EVENT_RECONCILIATION_INTERVAL_SECONDS,
+                    AmazonECSDiscoveryProperties.DEFAULT_EVENT_RECONCILIATION_INTERVAL_SECONDS));
+            this.maxSnapshotStalenessMillis =
+                    TimeUnit.SECONDS.toMillis(backgroundRefreshIntervalSeconds + maxSnapshotStalenessSeconds);
+        } else {
+            this.backgroundRefreshIntervalSeconds = getOrDefault(
+                    AmazonECSDiscoveryProperties.BACKGROUND_REFRESH_INTERVAL_SECONDS,
+                    AmazonECSDiscoveryProperties.DEFAULT_BACKGROUND_REFRESH_INTERVAL_SECONDS);
+            this.maxSnapshotStalenessMillis = TimeUnit.SECONDS.toMillis(maxSnapshotStalenessSeconds);
+        }
+
+        this.startupTimeoutSeconds = getOrDefault(AmazonECSDiscoveryProperties.STARTUP_TIMEOUT_SECONDS,
+                AmazonECSDiscoveryProperties.DEFAULT_STARTUP_TIMEOUT_SECONDS);
+
+        String snapshotFilePath = getOrDefault(AmazonECSDiscoveryProperties.SNAPSHOT_FILE, null);
+        this.snapshotFile = snapshotFilePath != null
+                ? new DiscoveryNodeSnapshotFile(Paths.get(snapshotFilePath)) : null;
+
+        String sharedStoreFilePath = getOrDefault(AmazonECSDiscoveryProperties.SHARED_STORE_FILE, null);
+        SharedDiscoveryStore store = sharedStore != null || sharedStoreFilePath == null
+                ? sharedStore : new FileSharedDiscoveryStore(Paths.get(sharedStoreFilePath));
+        this.sharedDiscovery = store != null
+                ? new SharedDiscoveryCoordinator(store, UUID.randomUUID().toString(),
+                        TimeUnit.SECONDS.toMillis(getOrDefault(AmazonECSDiscoveryProperties.SHARED_STORE_TTL_SECONDS,
+                                AmazonECSDiscoveryProperties.DEFAULT_SHARED_STORE_TTL_SECONDS)),
+                        getLogger())
+                : null;
     }
 
     @Override
     public void start() {
+        if (snapshotFile != null) {
+            loadSnapshotFile();
+        }
+
+        if (!sourcesConfigured && clusterOverride == null) {
+            try {
+                sources = Collections.singletonList(discoverSelfSource());
+            } catch (AmazonECSDiscoveryException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (backgroundRefreshIntervalSeconds > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(new DiscoveryThreadFactory());
+            refresher.scheduleWithFixedDelay(
+                    this::refreshInBackground, 0, backgroundRefreshIntervalSeconds, TimeUnit.SECONDS);
+        }
+
+        if (taskEventSource != null) {
+            taskEventListener = Executors.newSingleThreadExecutor(new DiscoveryThreadFactory());
+            taskEventListener.execute(this::listenForTaskEvents);
+        }
+    }
+
+    /**
+     * Discovers the cluster/service this process is running in. Unless the service is configured, the cluster name
+     * and this container's task are looked up concurrently, within the startup timeout.
+     */
+    private DiscoverySource discoverSelfSource() throws AmazonECSDiscoveryException {
+        if (serviceOverride != null) {
+            String clusterName = awaitStartupLookup(
+                    amazonECSDiscoveryUtils.discoverClusterNameAsync(executor), "ECS cluster");
+            return new DiscoverySource(clusterName, serviceOverride, null);
+        }
+
+        AmazonECSDiscoveryUtils.SelfIdentity self = awaitStartupLookup(
+                amazonECSDiscoveryUtils.discoverSelfIdentityAsync(executor), "ECS cluster/service");
+        return new DiscoverySource(self.getClusterName(), self.getServiceName(), null);
+    }
+
+    /**
+     * Waits for a lookup made on start, for at most {@link AmazonECSDiscoveryProperties#STARTUP_TIMEOUT_SECONDS}.
+     *
+     * @param description what is being looked up, for error messages
+     */
+    private <T> T awaitStartupLookup(CompletableFuture<T> lookup, String description)
+            throws AmazonECSDiscoveryException {
         try {
-            clusterName = amazonECSDiscoveryUtils.discoverClusterName();
-            serviceName = amazonECSDiscoveryUtils.discoverServiceName(clusterName).orElse(null);
-        } catch (AmazonECSDiscoveryException e) {
-            throw new RuntimeException(e);
+            return lookup.get(startupTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonECSDiscoveryException("Interrupted while discovering the " + description, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AmazonECSDiscoveryException) {
+                throw (AmazonECSDiscoveryException) cause;
+            }
+            throw new AmazonECSDiscoveryException("Unable to discover the " + description, cause);
+        } catch (TimeoutException e) {
+            lookup.cancel(true);
+            throw new AmazonECSDiscoveryException(
+                    description + " not discovered within " + startupTimeoutSeconds + " seconds", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (taskEventListener != null) {
+            taskEventListener.shutdownNow();
+        }
+        if (taskEventSource != null) {
+            try {
+                taskEventSource.close();
+            } catch (RuntimeException e) {
+                getLogger().warning("Failed to close ECS task event source", e);
+            }
+        }
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        if (sourceExecutor != null) {
+            sourceExecutor.shutdownNow();
+        }
+        executor.shutdownNow();
+        // Calls dropped from the executors' queues would never complete, so fail the discoveries waiting for them
+        for (CompletableFuture<?> call : pendingCalls) {
+            call.cancel(false);
         }
     }
 
+    /**
+     * Discovers the Hazelcast nodes running in the ECS cluster/service. When background refresh is enabled, the most
+     * recent snapshot is returned without blocking, unless there is none yet or it is older than the maximum
+     * staleness, in which case it is refreshed synchronously.
+     */
     @Override
     public Iterable<DiscoveryNode> discoverNodes() {
-        final Map<String, String> ipAddressByContainerInstanceArn = new HashMap<>();
+        return discoverNodes(NodeEmitter.NONE);
+    }
+
+    /**
+     * Discovers the Hazelcast nodes running in the ECS cluster/service like {@link #discoverNodes()}, but also passes
+     * each node to the given consumer as soon as it is resolved, so that joining can start before the slowest describe
+     * call returns: the nodes of tasks that are already known as soon as the page of task ARNs listing them arrives,
+     * and the nodes of new tasks as soon as the describe batch they are in (and their container instances) resolves.
+     * Each of the nodes returned is passed exactly once, and the consumer is never called concurrently.
+     * <p>
+     * Hazelcast never calls this method: its discovery service calls {@link #discoverNodes()} and collects all nodes
+     * before joining. Streaming only benefits callers that invoke this method directly.
+     *
+     * @return all nodes discovered, as {@link #discoverNodes()} would return them
+     */
+    public List<DiscoveryNode> discoverNodes(Consumer<? super DiscoveryNode> nodeConsumer) {
+        NodeEmitter emitter = new NodeEmitter(nodeConsumer);
+        List<DiscoveryNode> nodes = discoverNodes(emitter);
+        // Nodes that weren't resolved just now, e.g. from the snapshot or the last known good nodes
+        emitter.emitAll(nodes);
+        return nodes;
+    }
+
+    private List<DiscoveryNode> discoverNodes(NodeEmitter emitter) {
+        if (refresher == null) {
+            // Resolution updates the discovered tasks of each source, so concurrent callers and task events must
+            // not interleave with it
+            synchronized (membershipLock) {
+                return discoverSharedOrResolveNodes(emitter);
+            }
+        }
+
+        DiscoveryNodeSnapshot snapshot = nodeSnapshot.get();
+        if (snapshot != null) {
+            long ageMillis = snapshot.getAgeMillis();
+            if (ageMillis <= maxSnapshotStalenessMillis) {
+                AmazonECSDiscoveryMetrics.snapshotServed(ageMillis);
+                return snapshot.getNodes();
+            }
+        }
+
+        getLogger().fine("Discovered node snapshot is missing or stale; refreshing synchronously");
+        return refreshNodes(emitter);
+    }
+
+    /**
+     * @return the age (in milliseconds) of the most recent background refresh snapshot, or -1 if there is none
+     */
+    public long getSnapshotAgeMillis() {
+        DiscoveryNodeSnapshot snapshot = nodeSnapshot.get();
+        return snapshot != null ? snapshot.getAgeMillis() : -1;
+    }
+
+    public long getBackgroundRefreshIntervalSeconds() {
+        return backgroundRefreshIntervalSeconds;
+    }
+
+    public long getMaxSnapshotStalenessMillis() {
+        return maxSnapshotStalenessMillis;
+    }
+
+    /**
+     * @return the nodes returned by the last discovery in which every ECS/EC2 call succeeded
+     */
+    public List<DiscoveryNode> getLastKnownGoodNodes() {
+        return lastKnownGoodNodes;
+    }
+
+    /**
+     * Seeds the last known good nodes from the snapshot file. With background refresh enabled, they are also served
+     * as the initial snapshot, so that {@link #discoverNodes()} doesn't block on the first refresh.
+     */
+    private void loadSnapshotFile() {
+        List<DiscoveryNode> nodes;
+        try {
+            nodes = snapshotFile.read();
+        } catch (IOException e) {
+            getLogger().warning("Failed to read discovered node snapshot file " + snapshotFile.getPath(), e);
+            return;
+        }
+
+        if (!nodes.isEmpty()) {
+            getLogger().info("Loaded " + nodes.size() + " nodes from snapshot file " + snapshotFile.getPath());
+            setLastKnownGoodNodes(nodes);
+            if (backgroundRefreshIntervalSeconds > 0) {
+                nodeSnapshot.compareAndSet(null, new DiscoveryNodeSnapshot(nodes, System.currentTimeMillis()));
+            }
+        }
+    }
+
+    private void refreshInBackground() {
+        try {
+            refreshNodes(NodeEmitter.NONE);
+        } catch (Exception e) {
+            // Keep the previous snapshot; an exception would otherwise cancel all future refreshes
+            getLogger().severe("Background refresh of discovered nodes failed", e);
+        }
+    }
 
-        List<DiscoveryNode> nodes = getTasks().flatMap(ecsTask -> {
-            String ipAddress = ipAddressByContainerInstanceArn.computeIfAbsent(
-                    ecsTask.getContainerInstanceArn(), k -> getIpAddress(getContainerInstance(ecsTask)));
+    private List<DiscoveryNode> refreshNodes(NodeEmitter emitter) {
+        synchronized (membershipLock) {
+            List<DiscoveryNode> nodes = discoverSharedOrResolveNodes(emitter);
+            nodeSnapshot.set(new DiscoveryNodeSnapshot(nodes, System.currentTimeMillis()));
+            return nodes;
+        }
+    }
 
-            return getHazelcastNetworkBindings(ecsTask)
-                    .map(networkBinding -> getDiscoveryNode(ipAddress, networkBinding.getHostPort()))
-                    .filter(Objects::nonNull);
-        }).filter(Objects::nonNull)
-                .peek(node -> getLogger().fine("Discovered node: " + node.getPrivateAddress().toString()))
-                .collect(Collectors.toList());
+    /**
+     * @return the nodes published by the member leading discovery if members share discovered nodes and they are
+     * fresh, otherwise the nodes resolved from ECS/EC2
+     */
+    private List<DiscoveryNode> discoverSharedOrResolveNodes(NodeEmitter emitter) {
+        if (sharedDiscovery == null) {
+            return resolveNodes(emitter).getNodes();
+        }
+
+        boolean[] resolved = new boolean[1];
+        List<DiscoveryNode> nodes = sharedDiscovery.discover(() -> {
+            resolved[0] = true;
+            return resolveNodes(emitter);
+        });
+        if (!resolved[0]) {
+            // The discovered tasks of the sources weren't updated, so they no longer match the nodes returned
+            reconciled = false;
+        }
+        return nodes;
+    }
+
+    private void listenForTaskEvents() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<Task> tasks = taskEventSource.poll(TASK_EVENT_POLL_SECONDS, TimeUnit.SECONDS);
+                if (!tasks.isEmpty()) {
+                    applyTaskEvents(tasks);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // Reconciliation still keeps membership up to date; back off rather than spin on a failing source
+                getLogger().warning("Failed to receive ECS task state change events", e);
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies ECS task state changes to the tasks discovered so far, so that members joining or leaving are picked up
+     * without listing the cluster/service. Tasks that are stopping or no longer pass the task filter are dropped, and
+     * new live tasks are resolved to nodes. The snapshot is only republished while the discovered tasks are reconciled,
+     * i.e. once this member has completed a full discovery itself, and not while it uses the nodes discovered by
+     * another member, so that it never consists of just the tasks mentioned by events.<br>
+     *
+     * Events may be delivered late, more than once and out of order, so an event is ignored unless its version is
+     * newer than that of the last event applied for the task, and any event for a task that has stopped is ignored.
+     */
+    void applyTaskEvents(List<Task> tasks) {
+        synchronized (membershipLock) {
+            List<Task> currentTasks = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                if (isCurrentTaskEvent(task)) {
+                    currentTasks.add(task);
+                }
+            }
+
+            long failuresBefore = failures.sum();
+            boolean changed = false;
+            for (DiscoverySource source : sources) {
+                Map<String, DiscoveredTask> discoveredTasks = source.getDiscoveredTasks();
+                List<Task> newTasks = new ArrayList<>();
+                for (Task task : currentTasks) {
+                    if (!source.matches(task)) {
+                        continue;
+                    }
+                    if (DesiredStatus.RUNNING.toString().equals(task.getDesiredStatus()) && isLive(task)) {
+                        if (!discoveredTasks.containsKey(task.getTaskArn())) {
+                            newTasks.add(task);
+                        }
+                    } else if (discoveredTasks.remove(task.getTaskArn()) != null) {
+                        if (getLogger().isFineEnabled()) {
+                            getLogger().fine("ECS task [" + task.getTaskArn() + "] left; last status: "
+                                    + task.getLastStatus() + ", desired status: " + task.getDesiredStatus());
+                        }
+                        changed = true;
+                    }
+                }
+
+                if (!newTasks.isEmpty()) {
+                    Map<String, String> ipAddressByContainerInstanceArn =
+                            getIpAddresses(source.getClusterName(), getContainerInstanceArns(newTasks));
+                    for (Task task : newTasks) {
+                        changed |= resolveTask(task, ipAddressByContainerInstanceArn, discoveredTasks) > 0;
+                    }
+                }
+            }
+
+            if (changed && reconciled) {
+                List<DiscoveryNode> nodes = collectNodes(sources);
+                if (failures.sum() == failuresBefore) {
+                    updateLastKnownGoodNodes(nodes);
+                }
+                nodeSnapshot.set(new DiscoveryNodeSnapshot(
+                        Collections.unmodifiableList(nodes), System.currentTimeMillis()));
+            }
+        }
+    }
+
+    /**
+     * Records the version of a task state change event, and whether the task stopped.
+     *
+     * @return true if the event is newer than all events applied for the task so far and the task hasn't stopped
+     */
+    private boolean isCurrentTaskEvent(Task task) {
+        String taskArn = task.getTaskArn();
+        if (stoppedTaskArns.containsKey(taskArn)) {
+            if (getLogger().isFineEnabled()) {
+                getLogger().fine("Ignoring event for stopped ECS task [" + taskArn + "]");
+            }
+            return false;
+        }
+
+        Long version = task.getVersion();
+        if (version != null) {
+            Long lastVersion = taskEventVersions.get(taskArn);
+            if (lastVersion != null && version <= lastVersion) {
+                if (getLogger().isFineEnabled()) {
+                    getLogger().fine("Ignoring outdated event for ECS task [" + taskArn + "]; version: " + version
+                            + ", last applied version: " + lastVersion);
+                }
+                return false;
+            }
+            taskEventVersions.put(taskArn, version);
+        }
+
+        if (STOPPED_STATUS.equals(task.getDesiredStatus()) || STOPPED_STATUS.equals(task.getLastStatus())) {
+            stoppedTaskArns.put(taskArn, Boolean.TRUE);
+            taskEventVersions.remove(taskArn);
+        }
+        return true;
+    }
+
+    /**
+     * Resolves the Hazelcast nodes running in all discovery sources. Sources are resolved concurrently, and nodes
+     * found in more than one source are only returned once.<br>
+     *
+     * If any ECS/EC2 call failed, the result is merged with the last known good nodes, so that a partial result
+     * doesn't make Hazelcast drop members that may well still be running.
+     */
+    private ResolvedNodes resolveNodes(NodeEmitter emitter) {
+        long start = System.nanoTime();
+        long failuresBefore = failures.sum();
+
+        List<DiscoverySource> sources = this.sources;
+        List<SourceResolution> resolutions;
+        if (sources.size() == 1) {
+            resolutions = Collections.singletonList(resolveSource(sources.get(0), emitter));
+        } else {
+            List<CompletableFuture<SourceResolution>> futures = new ArrayList<>(sources.size());
+            for (DiscoverySource source : sources) {
+                futures.add(callAsync(sourceExecutor, () -> resolveSource(source, emitter)));
+            }
+            resolutions = new ArrayList<>(futures.size());
+            for (CompletableFuture<SourceResolution> future : futures) {
+                // A source that wasn't resolved is incomplete
+                resolutions.add(joinCall(future, new SourceResolution()));
+            }
+        }
+
+        boolean complete = true;
+        int nodesAdded = 0;
+        int nodesRemoved = 0;
+        for (SourceResolution resolution : resolutions) {
+            complete &= resolution.complete;
+            nodesAdded += resolution.nodesAdded;
+            nodesRemoved += resolution.nodesRemoved;
+        }
+
+        if (complete) {
+            Set<String> taskArns = new HashSet<>();
+            Set<String> containerInstanceArns = new HashSet<>();
+            for (DiscoverySource source : sources) {
+                taskArns.addAll(source.getDiscoveredTasks().keySet());
+                for (DiscoveredTask discoveredTask : source.getDiscoveredTasks().values()) {
+                    if (discoveredTask.getContainerInstanceArn() != null) {
+                        containerInstanceArns.add(discoveredTask.getContainerInstanceArn());
+                    }
+                }
+            }
+            containerInstanceAddressCache.retainAll(containerInstanceArns);
+            taskEventVersions.keySet().retainAll(taskArns);
+        }
+
+        List<DiscoveryNode> nodes = collectNodes(sources);
+
+        complete &= failures.sum() == failuresBefore;
+        if (!complete) {
+            nodes = mergeWithLastKnownGoodNodes(nodes);
+        } else {
+            updateLastKnownGoodNodes(nodes);
+            reconciled = true;
+        }
 
         if (nodes.isEmpty()) {
             getLogger().info("No nodes discovered");
         }
 
-        return Collections.unmodifiableList(nodes);
+        AmazonECSDiscoveryMetrics.discovery(nodes.size(), nodesAdded, nodesRemoved, System.nanoTime() - start);
+        return new ResolvedNodes(Collections.unmodifiableList(nodes), complete);
+    }
+
+    /**
+     * Resolves the Hazelcast nodes running in a discovery source. Tasks resolved by previous calls are kept in the
+     * source, so only task ARNs that have not been seen before are described; tasks that are no longer listed are
+     * dropped. If listing fails part way through (e.g. because ECS is still throttling us after all retries), the
+     * known tasks are kept as is, so the last known nodes are returned rather than none. Known tasks are emitted as
+     * they are listed, and new tasks as each batch of them is described and resolved.
+     */
+    private SourceResolution resolveSource(DiscoverySource source, NodeEmitter emitter) {
+        long start = System.nanoTime();
+        SourceResolution resolution = new SourceResolution();
+        Map<String, DiscoveredTask> discoveredTasks = source.getDiscoveredTasks();
+
+        resolution.nodesRemoved += revalidateTasks(source);
+
+        TaskListing taskListing = getTasks(source, discoveredTasks.keySet(),
+                taskArn -> emitter.emit(discoveredTasks.get(taskArn)),
+                tasks -> resolution.nodesAdded += resolveTasks(source, tasks, emitter));
+        resolution.complete = taskListing.complete;
+        if (taskListing.complete) {
+            for (Iterator<Map.Entry<String, DiscoveredTask>> it = discoveredTasks.entrySet().iterator();
+                 it.hasNext(); ) {
+                Map.Entry<String, DiscoveredTask> entry = it.next();
+                if (!taskListing.taskArns.contains(entry.getKey())) {
+                    resolution.nodesRemoved += entry.getValue().getNodes().size();
+                    it.remove();
+                }
+            }
+        }
+
+        int nodes = 0;
+        for (DiscoveredTask discoveredTask : discoveredTasks.values()) {
+            nodes += discoveredTask.getNodes().size();
+        }
+        AmazonECSDiscoveryMetrics.sourceDiscovery(source.toString(), nodes, System.nanoTime() - start);
+        return resolution;
+    }
+
+    /**
+     * Describes the tasks discovered in the source that were last described more than the
+     * {@link AmazonECSDiscoveryProperties#REVALIDATION_INTERVAL_SECONDS revalidation interval} ago again, along with
+     * the container instances hosting them, and drops the tasks that no longer pass the task filter, e.g. because they
+     * became UNHEALTHY or their container instance started DRAINING after they were discovered. Tasks that fail to be
+     * described are kept, and revalidated again next time. Dropped tasks that are still listed are described again,
+     * like any other task that isn't live yet.
+     *
+     * @return the number of nodes removed
+     */
+    private int revalidateTasks(DiscoverySource source) {
+        if (revalidationIntervalNanos <= 0) {
+            return 0;
+        }
+
+        Map<String, DiscoveredTask> discoveredTasks = source.getDiscoveredTasks();
+        long now = nanoClock.getAsLong();
+        List<String> staleTaskArns = new ArrayList<>();
+        for (Map.Entry<String, DiscoveredTask> entry : discoveredTasks.entrySet()) {
+            if (now - entry.getValue().getDescribedNanos() >= revalidationIntervalNanos) {
+                staleTaskArns.add(entry.getKey());
+            }
+        }
+        if (staleTaskArns.isEmpty()) {
+            return 0;
+        }
+
+        List<CompletableFuture<List<Task>>> batches = new ArrayList<>();
+        for (List<String> batch : partition(staleTaskArns, batchSize)) {
+            batches.add(callAsync(executor, () -> describeTasks(source.getClusterName(), batch)));
+        }
+
+        int nodesRemoved = 0;
+        Set<String> containerInstanceArns = new HashSet<>();
+        for (CompletableFuture<List<Task>> batch : batches) {
+            for (Task task : joinCall(batch, Collections.<Task>emptyList())) {
+                DiscoveredTask discoveredTask = discoveredTasks.get(task.getTaskArn());
+                if (discoveredTask == null) {
+                    continue;
+                }
+                if (!isLive(task)) {
+                    discoveredTasks.remove(task.getTaskArn());
+                    nodesRemoved += discoveredTask.getNodes().size();
+                } else {
+                    discoveredTasks.put(task.getTaskArn(), discoveredTask.describedAt(now));
+                    if (discoveredTask.getContainerInstanceArn() != null) {
+                        containerInstanceArns.add(discoveredTask.getContainerInstanceArn());
+                    }
+                }
+            }
+        }
+
+        Set<String> inactiveContainerInstanceArns =
+                getInactiveContainerInstanceArns(source.getClusterName(), containerInstanceArns);
+        for (String containerInstanceArn : inactiveContainerInstanceArns) {
+            // Resolve it again, checking its status, before discovering any other task on it
+            containerInstanceAddressCache.invalidate(containerInstanceArn);
+        }
+        if (!inactiveContainerInstanceArns.isEmpty()) {
+            for (Iterator<DiscoveredTask> it = discoveredTasks.values().iterator(); it.hasNext(); ) {
+                DiscoveredTask discoveredTask = it.next();
+                if (inactiveContainerInstanceArns.contains(discoveredTask.getContainerInstanceArn())) {
+                    nodesRemoved += discoveredTask.getNodes().size();
+                    it.remove();
+                }
+            }
+        }
+        return nodesRemoved;
+    }
+
+    /**
+     * @return those of the given container instances that are no longer active, judging by their status as
+     * described, or with {@code attribute} host resolution, as listed; empty if their status couldn't be retrieved
+     */
+    private Set<String> getInactiveContainerInstanceArns(String clusterName, Set<String> containerInstanceArns) {
+        Set<String> inactiveContainerInstanceArns = new HashSet<>();
+        if (containerInstanceArns.isEmpty()) {
+            return inactiveContainerInstanceArns;
+        }
+
+        if (hostResolution == HostResolution.ATTRIBUTE) {
+            Set<String> activeContainerInstanceIds = getActiveContainerInstanceIds(clusterName);
+            if (activeContainerInstanceIds != null) {
+                for (String containerInstanceArn : containerInstanceArns) {
+                    if (!activeContainerInstanceIds.contains(getResourceId(containerInstanceArn))) {
+                        inactiveContainerInstanceArns.add(containerInstanceArn);
+                    }
+                }
+            }
+            return inactiveContainerInstanceArns;
+        }
+
+        for (ContainerInstance containerInstance : getContainerInstances(clusterName, containerInstanceArns)) {
+            if (!isActive(containerInstance)) {
+                inactiveContainerInstanceArns.add(containerInstance.getContainerInstanceArn());
+            }
+        }
+        return inactiveContainerInstanceArns;
+    }
+
+    /**
+     * Resolves the nodes of a batch of newly described tasks, adds them to the discovered tasks of the source and
+     * emits them.
+     *
+     * @return the number of nodes added
+     */
+    private int resolveTasks(DiscoverySource source, List<Task> tasks, NodeEmitter emitter) {
+        // Tasks that aren't live yet (e.g. PENDING) aren't kept, so they are described again next time
+        List<Task> newTasks = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            // A listing may briefly lag behind the events that stopped a task
+            if (isLive(task) && !stoppedTaskArns.containsKey(task.getTaskArn())) {
+                newTasks.add(task);
+            }
+        }
+        Map<String, String> ipAddressByContainerInstanceArn =
+                getIpAddresses(source.getClusterName(), getContainerInstanceArns(newTasks));
+
+        Map<String, DiscoveredTask> discoveredTasks = source.getDiscoveredTasks();
+        int nodesAdded = 0;
+        for (Task ecsTask : newTasks) {
+            int taskNodesAdded = resolveTask(ecsTask, ipAddressByContainerInstanceArn, discoveredTasks);
+            if (taskNodesAdded > 0) {
+                nodesAdded += taskNodesAdded;
+                emitter.emit(discoveredTasks.get(ecsTask.getTaskArn()));
+            }
+        }
+        return nodesAdded;
+    }
+
+    /**
+     * Resolves the nodes of a live task and adds it to the discovered tasks.
+     *
+     * @return the number of nodes added
+     */
+    private int resolveTask(Task ecsTask,
+                            Map<String, String> ipAddressByContainerInstanceArn,
+                            Map<String, DiscoveredTask> discoveredTasks) {
+        boolean onContainerInstanceAddress = isOnContainerInstanceAddress(ecsTask);
+        List<DiscoveryNode> taskNodes = onContainerInstanceAddress
+                ? getBridgeDiscoveryNodes(ecsTask, ipAddressByContainerInstanceArn)
+                : getAwsvpcDiscoveryNodes(ecsTask, getTaskIpAddress(ecsTask));
+
+        // Tasks that could not be resolved yet (e.g. no host port assigned) are described again next time
+        if (taskNodes.isEmpty()) {
+            return 0;
+        }
+        discoveredTasks.put(ecsTask.getTaskArn(), new DiscoveredTask(
+                onContainerInstanceAddress ? ecsTask.getContainerInstanceArn() : null, taskNodes,
+                nanoClock.getAsLong()));
+        return taskNodes.size();
+    }
+
+    /**
+     * @return the nodes of all tasks discovered in the sources, each address only once
+     */
+    private static List<DiscoveryNode> collectNodes(List<DiscoverySource> sources) {
+        if (sources.size() == 1) {
+            // A single source can't contain the same address twice, since each node belongs to one task
+            Collection<DiscoveredTask> discoveredTasks = sources.get(0).getDiscoveredTasks().values();
+            List<DiscoveryNode> nodes = new ArrayList<>(discoveredTasks.size());
+            for (DiscoveredTask discoveredTask : discoveredTasks) {
+                nodes.addAll(discoveredTask.getNodes());
+            }
+            return nodes;
+        }
+
+        Map<Address, DiscoveryNode> nodesByAddress = new LinkedHashMap<>();
+        for (DiscoverySource source : sources) {
+            for (DiscoveredTask discoveredTask : source.getDiscoveredTasks().values()) {
+                for (DiscoveryNode node : discoveredTask.getNodes()) {
+                    nodesByAddress.putIfAbsent(node.getPrivateAddress(), node);
+                }
+            }
+        }
+        return new ArrayList<>(nodesByAddress.values());
+    }
+
+    private List<DiscoveryNode> mergeWithLastKnownGoodNodes(List<DiscoveryNode> nodes) {
+        List<DiscoveryNode> lastKnownGood = lastKnownGoodNodes;
+        if (lastKnownGood.isEmpty()) {
+            return nodes;
+        }
+
+        Map<Address, DiscoveryNode> merged = new LinkedHashMap<>();
+        for (DiscoveryNode node : lastKnownGood) {
+            merged.put(node.getPrivateAddress(), node);
+        }
+        for (DiscoveryNode node : nodes) {
+            merged.put(node.getPrivateAddress(), node);
+        }
+        getLogger().warning("Discovery was incomplete; including the last known good nodes in the result");
+        return new ArrayList<>(merged.values());
+    }
+
+    private synchronized void updateLastKnownGoodNodes(List<DiscoveryNode> nodes) {
+        if (hasSameAddresses(nodes, lastKnownGoodNodes)) {
+            return;
+        }
+
+        setLastKnownGoodNodes(nodes);
+        if (snapshotFile != null) {
+            try {
+                snapshotFile.write(nodes);
+            } catch (IOException e) {
+                getLogger().warning("Failed to write discovered node snapshot file " + snapshotFile.getPath(), e);
+            }
+        }
+    }
+
+    private void setLastKnownGoodNodes(List<DiscoveryNode> nodes) {
+        Map<String, DiscoveryNode> nodesByEndpoint = new HashMap<>(nodes.size() * 2);
+        for (DiscoveryNode node : nodes) {
+            Address address = node.getPrivateAddress();
+            nodesByEndpoint.put(getEndpoint(address.getHost(), address.getPort()), node);
+        }
+        lastKnownGoodNodesByEndpoint = nodesByEndpoint;
+        lastKnownGoodNodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+    }
+
+    private static String getEndpoint(String ipAddress, int port) {
+        return ipAddress + ':' + port;
+    }
+
+    /**
+     * @return true if both lists contain the same addresses, in any order; discovery usually returns them in the same
+     * order, which is checked without allocating
+     */
+    private static boolean hasSameAddresses(List<DiscoveryNode> nodes, List<DiscoveryNode> otherNodes) {
+        if (nodes.size() != otherNodes.size()) {
+            return false;
+        }
+
+        boolean sameOrder = true;
+        for (int i = 0; i < nodes.size() && sameOrder; i++) {
+            sameOrder = nodes.get(i).getPrivateAddress().equals(otherNodes.get(i).getPrivateAddress());
+        }
+        return sameOrder || getAddresses(nodes).equals(getAddresses(otherNodes));
+    }
+
+    private static Set<Address> getAddresses(List<DiscoveryNode> nodes) {
+        Set<Address> addresses = new HashSet<>(nodes.size() * 2);
+        for (DiscoveryNode node : nodes) {
+            addresses.add(node.getPrivateAddress());
+        }
+        return addresses;
+    }
+
+    /**
+     * Builds the nodes of a task that uses bridge or host networking, where Hazelcast is reachable on the private IP
+     * address of the container instance hosting the task and the host port mapped to the Hazelcast container port.
+     */
+    private List<DiscoveryNode> getBridgeDiscoveryNodes(Task task,
+                                                        Map<String, String> ipAddressByContainerInstanceArn) {
+        String containerInstanceArn = task.getContainerInstanceArn();
+        String ipAddress = containerInstanceArn != null
+                ? ipAddressByContainerInstanceArn.get(containerInstanceArn) : null;
+        List<Container> containers = task.getContainers();
+        if (ipAddress == null || containers == null || containers.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<DiscoveryNode> nodes = null;
+        for (Container container : containers) {
+            NetworkBinding networkBinding = getHazelcastNetworkBinding(task, container);
+            DiscoveryNode node = networkBinding != null
+                    ? getDiscoveryNode(ipAddress, networkBinding.getHostPort()) : null;
+            if (node != null) {
+                if (getLogger().isFineEnabled()) {
+                    getLogger().fine("Discovered node: " + node.getPrivateAddress());
+                }
+                if (nodes == null) {
+                    nodes = new ArrayList<>(containers.size());
+                }
+                nodes.add(node);
+            }
+        }
+        return nodes != null ? nodes : Collections.emptyList();
+    }
+
+    /**
+     * Builds the node of a task that uses awsvpc networking (including all Fargate tasks). Such a task has its own
+     * elastic network interface, so Hazelcast is reachable on the task's private IP address and the container port.
+     */
+    private List<DiscoveryNode> getAwsvpcDiscoveryNodes(Task task, String taskIpAddress) {
+        DiscoveryNode node = getDiscoveryNode(taskIpAddress, containerPort);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+
+        if (getLogger().isFineEnabled()) {
+            getLogger().fine("Discovered node for awsvpc ECS task [" + task.getTaskArn() + "]: "
+                    + node.getPrivateAddress());
+        }
+        return Collections.singletonList(node);
+    }
+
+    /**
+     * @return true if the task passes the {@link AmazonECSDiscoveryProperties#TASK_FILTER task filter}
+     */
+    private boolean isLive(Task task) {
+        if (taskFilter == TaskFilter.NONE) {
+            return true;
+        }
+
+        boolean live = RUNNING_STATUS.equals(task.getLastStatus()) && (taskFilter == TaskFilter.HEALTHY
+                ? HEALTHY_STATUS.equals(task.getHealthStatus())
+                : !UNHEALTHY_STATUS.equals(task.getHealthStatus()));
+        if (!live && getLogger().isFineEnabled()) {
+            getLogger().fine("Skipping ECS task [" + task.getTaskArn() + "]; last status: " + task.getLastStatus()
+                    + ", health status: " + task.getHealthStatus());
+        }
+        return live;
+    }
+
+    /**
+     * @return true if tasks on the container instance may be discovered, i.e. it isn't DRAINING (or otherwise
+     * inactive), or the {@link AmazonECSDiscoveryProperties#TASK_FILTER task filter} is disabled
+     */
+    private boolean isActive(ContainerInstance containerInstance) {
+        if (taskFilter == TaskFilter.NONE || ACTIVE_STATUS.equals(containerInstance.getStatus())) {
+            return true;
+        }
+
+        if (getLogger().isFineEnabled()) {
+            getLogger().fine("Skipping tasks on ECS container instance ["
+                    + containerInstance.getContainerInstanceArn() + "]; status: " + containerInstance.getStatus());
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the task's nodes are reachable on the private IP address of its container instance, false if
+     * they are reachable on the task's own network interface
+     */
+    private boolean isOnContainerInstanceAddress(Task task) {
+        switch (networkMode) {
+            case BRIDGE:
+                return true;
+            case AWSVPC:
+                return false;
+            default:
+                return getTaskIpAddress(task) == null;
+        }
+    }
+
+    /**
+     * @return the private IP address of the task's elastic network interface if the task uses awsvpc networking,
+     * otherwise null
+     */
+    static String getTaskIpAddress(Task task) {
+        if (task.getAttachments() != null) {
+            for (Attachment attachment : task.getAttachments()) {
+                if (ENI_ATTACHMENT_TYPE.equals(attachment.getType()) && attachment.getDetails() != null) {
+                    for (KeyValuePair detail : attachment.getDetails()) {
+                        if (ENI_PRIVATE_IPV4_ADDRESS_DETAIL.equals(detail.getName()) && detail.getValue() != null) {
+                            return detail.getValue();
+                        }
+                    }
+                }
+            }
+        }
+
+        if (task.getContainers() != null) {
+            for (Container container : task.getContainers()) {
+                if (container.getNetworkInterfaces() != null) {
+                    for (NetworkInterface networkInterface : container.getNetworkInterfaces()) {
+                        if (networkInterface.getPrivateIpv4Address() != null) {
+                            return networkInterface.getPrivateIpv4Address();
+                        }
+                    }
+                }
+            }
+        }
+
+        return null;
     }
 
     private DiscoveryNode getDiscoveryNode(String ipAddress, Integer port) {
@@ -105,6 +1133,13 @@ public class AmazonECSDiscoveryStrategy extends AbstractDiscoveryStrategy {
             return null;
         }
 
+        // Reuse the node of an unchanged endpoint (e.g. a task replaced on the same host port, or a node loaded from
+        // the snapshot file) rather than parsing its address again
+        DiscoveryNode lastKnownGoodNode = lastKnownGoodNodesByEndpoint.get(getEndpoint(ipAddress, port));
+        if (lastKnownGoodNode != null) {
+            return lastKnownGoodNode;
+        }
+
         try {
             return new SimpleDiscoveryNode(new Address(ipAddress, port));
         } catch (UnknownHostException e) {
@@ -115,34 +1150,328 @@ public class AmazonECSDiscoveryStrategy extends AbstractDiscoveryStrategy {
         return null;
     }
 
-    private Stream<NetworkBinding> getHazelcastNetworkBindings(Task task) {
-        return task.getContainers().stream()
-                .peek(container -> getLogger().fine(
-                        "Found ECS container for ECS task [" + task.getTaskArn() + "]: " + container.getContainerArn()))
-                .map(this::getHazelcastNetworkBinding)
-                .filter(Objects::nonNull)
-                .peek(networkBinding -> getLogger().fine(
-                        "Found Hazelcast network binding for ECS task [" + task.getTaskArn() + "]: " + networkBinding));
+    /**
+     * @return the container's binding of the Hazelcast container port, or null if it doesn't have one
+     */
+    private NetworkBinding getHazelcastNetworkBinding(Task task, Container container) {
+        List<NetworkBinding> networkBindings = container.getNetworkBindings();
+        if (networkBindings == null) {
+            return null;
+        }
+
+        for (NetworkBinding networkBinding : networkBindings) {
+            Integer port = networkBinding.getContainerPort();
+            if (port != null && port == containerPort) {
+                if (getLogger().isFineEnabled()) {
+                    getLogger().fine("Found Hazelcast network binding for ECS container ["
+                            + container.getContainerArn() + "] of ECS task [" + task.getTaskArn() + "]: "
+                            + networkBinding);
+                }
+                return networkBinding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolves the private IP addresses of the given container instances, consulting the container instance address
+     * cache first and resolving only the container instances that are not cached, as configured by
+     * {@link AmazonECSDiscoveryProperties#HOST_RESOLUTION}. When describing them, each batch of container instances
+     * is described concurrently, and the EC2 instances of a batch are described as soon as that batch completes.
+     * Container instances whose address expired from the cache but whose EC2 instance ID is still cached are not
+     * described again; only their EC2 instances are.
+     */
+    private Map<String, String> getIpAddresses(String clusterName, Collection<String> containerInstanceArns) {
+        Map<String, String> ipAddressByContainerInstanceArn = new ConcurrentHashMap<>();
+        List<String> uncachedContainerInstanceArns = new ArrayList<>();
+
+        for (String containerInstanceArn : containerInstanceArns) {
+            String ipAddress = containerInstanceAddressCache.getIpAddress(containerInstanceArn);
+            AmazonECSDiscoveryMetrics.cacheLookup(ipAddress != null);
+            if (ipAddress != null) {
+                ipAddressByContainerInstanceArn.put(containerInstanceArn, ipAddress);
+            } else {
+                uncachedContainerInstanceArns.add(containerInstanceArn);
+            }
+        }
+
+        if (uncachedContainerInstanceArns.isEmpty()) {
+            return ipAddressByContainerInstanceArn;
+        }
+        if (hostResolution == HostResolution.TAG) {
+            resolveIpAddressesByTag(clusterName, uncachedContainerInstanceArns, ipAddressByContainerInstanceArn);
+            return ipAddressByContainerInstanceArn;
+        }
+        if (hostResolution == HostResolution.ATTRIBUTE) {
+            resolveIpAddressesByAttribute(
+                    clusterName, uncachedContainerInstanceArns, ipAddressByContainerInstanceArn);
+            return ipAddressByContainerInstanceArn;
+        }
+
+        List<String> undescribedContainerInstanceArns = new ArrayList<>();
+        Map<String, String> ec2InstanceIdByContainerInstanceArn = new HashMap<>();
+        for (String containerInstanceArn : uncachedContainerInstanceArns) {
+            String ec2InstanceId = containerInstanceAddressCache.getEc2InstanceId(containerInstanceArn);
+            if (ec2InstanceId != null) {
+                ec2InstanceIdByContainerInstanceArn.put(containerInstanceArn, ec2InstanceId);
+            } else {
+                undescribedContainerInstanceArns.add(containerInstanceArn);
+            }
+        }
+
+        List<List<String>> partitions = partition(undescribedContainerInstanceArns, batchSize);
+        CompletableFuture<?>[] batches = new CompletableFuture<?>[partitions.size()];
+        for (int i = 0; i < batches.length; i++) {
+            List<String> batch = partitions.get(i);
+            batches[i] = callAsync(executor, () -> {
+                resolveIpAddresses(getContainerInstances(clusterName, batch), ipAddressByContainerInstanceArn);
+                return null;
+            });
+        }
+        if (!ec2InstanceIdByContainerInstanceArn.isEmpty()) {
+            resolveIpAddressesByEc2InstanceId(ec2InstanceIdByContainerInstanceArn, ipAddressByContainerInstanceArn);
+        }
+        for (CompletableFuture<?> batch : batches) {
+            joinCall(batch, null);
+        }
+
+        return ipAddressByContainerInstanceArn;
+    }
+
+    private void resolveIpAddresses(List<ContainerInstance> containerInstances,
+                                    Map<String, String> ipAddressByContainerInstanceArn) {
+
+        List<ContainerInstance> activeContainerInstances = new ArrayList<>(containerInstances.size());
+        for (ContainerInstance containerInstance : containerInstances) {
+            if (isActive(containerInstance)) {
+                activeContainerInstances.add(containerInstance);
+            }
+        }
+        Map<String, Instance> ec2InstancesById = getEc2Instances(activeContainerInstances);
+
+        for (ContainerInstance containerInstance : activeContainerInstances) {
+            String ipAddress = getIpAddress(
+                    containerInstance, ec2InstancesById.get(containerInstance.getEc2InstanceId()));
+            if (ipAddress != null) {
+                containerInstanceAddressCache.putEc2InstanceId(
+                        containerInstance.getContainerInstanceArn(), containerInstance.getEc2InstanceId());
+                ipAddressByContainerInstanceArn.put(containerInstance.getContainerInstanceArn(), ipAddress);
+                containerInstanceAddressCache.put(containerInstance.getContainerInstanceArn(), ipAddress);
+            }
+        }
+    }
+
+    /**
+     * Resolves the private IP addresses of container instances whose EC2 instance ID is already known by describing
+     * just their EC2 instances.
+     */
+    private void resolveIpAddressesByEc2InstanceId(Map<String, String> ec2InstanceIdByContainerInstanceArn,
+                                                   Map<String, String> ipAddressByContainerInstanceArn) {
+
+        Map<String, Instance> ec2InstancesById =
+                getEc2InstancesById(new HashSet<>(ec2InstanceIdByContainerInstanceArn.values()));
+        for (Map.Entry<String, String> entry : ec2InstanceIdByContainerInstanceArn.entrySet()) {
+            Instance ec2Instance = ec2InstancesById.get(entry.getValue());
+            String ipAddress = ec2Instance != null ? ec2Instance.getPrivateIpAddress() : null;
+            if (ipAddress == null) {
+                getLogger().warning("EC2 instance " + entry.getValue() + " not found for ECS container instance: "
+                        + entry.getKey());
+                continue;
+            }
+            ipAddressByContainerInstanceArn.put(entry.getKey(), ipAddress);
+            containerInstanceAddressCache.put(entry.getKey(), ipAddress);
+        }
+    }
+
+    /**
+     * Resolves the private IP addresses of container instances from a single (paginated) {@code describeInstances}
+     * call for all EC2 instances with the host tag. Container instances are only described to learn their EC2
+     * instance ID, which never changes, the first time they are seen.
+     */
+    private void resolveIpAddressesByTag(String clusterName,
+                                         List<String> containerInstanceArns,
+                                         Map<String, String> ipAddressByContainerInstanceArn) {
+
+        List<String> unknownContainerInstanceArns = new ArrayList<>();
+        for (String containerInstanceArn : containerInstanceArns) {
+            if (containerInstanceAddressCache.getEc2InstanceId(containerInstanceArn) == null) {
+                unknownContainerInstanceArns.add(containerInstanceArn);
+            }
+        }
+        for (ContainerInstance containerInstance : getContainerInstances(clusterName, unknownContainerInstanceArns)) {
+            if (isActive(containerInstance) && containerInstance.getEc2InstanceId() != null) {
+                containerInstanceAddressCache.putEc2InstanceId(
+                        containerInstance.getContainerInstanceArn(), containerInstance.getEc2InstanceId());
+            }
+        }
+
+        Map<String, String> ipAddressByEc2InstanceId = getTaggedIpAddresses();
+        for (String containerInstanceArn : containerInstanceArns) {
+            String ec2InstanceId = containerInstanceAddressCache.getEc2InstanceId(containerInstanceArn);
+            if (ec2InstanceId == null) {
+                continue;
+            }
+            String ipAddress = ipAddressByEc2InstanceId.get(ec2InstanceId);
+            if (ipAddress == null) {
+                getLogger().warning("EC2 instance " + ec2InstanceId + " of ECS container instance "
+                        + containerInstanceArn + " not found with tag " + hostTagFilter);
+                continue;
+            }
+            ipAddressByContainerInstanceArn.put(containerInstanceArn, ipAddress);
+            containerInstanceAddressCache.put(containerInstanceArn, ipAddress);
+        }
+    }
+
+    /**
+     * @return the private IP addresses of all running EC2 instances with the host tag, by EC2 instance ID
+     */
+    private Map<String, String> getTaggedIpAddresses() {
+        Map<String, String> ipAddressByEc2InstanceId = new HashMap<>();
+        DescribeInstancesRequest request = new DescribeInstancesRequest()
+                .withFilters(hostTagFilter, new Filter("instance-state-name", Collections.singletonList("running")))
+                .withMaxResults(MAX_DESCRIBE_INSTANCES_PAGE_SIZE);
+
+        try {
+            do {
+                DescribeInstancesResult result = throttle.call(AmazonECSDiscoveryApi.DESCRIBE_INSTANCES,
+                        () -> ec2Client.describeInstances(request));
+                if (result.getReservations() != null) {
+                    for (Reservation reservation : result.getReservations()) {
+                        for (Instance instance : reservation.getInstances()) {
+                            if (instance.getInstanceId() != null && instance.getPrivateIpAddress() != null) {
+                                ipAddressByEc2InstanceId.put(instance.getInstanceId(), instance.getPrivateIpAddress());
+                            }
+                        }
+                    }
+                }
+                request.setNextToken(result.getNextToken());
+            } while (request.getNextToken() != null);
+        } catch (Exception e) {
+            failures.increment();
+            getLogger().severe("Failed to get EC2 instances with tag " + hostTagFilter, e);
+        }
+
+        return ipAddressByEc2InstanceId;
+    }
+
+    /**
+     * Resolves the private IP addresses of container instances from the host address attribute of all container
+     * instances in the cluster, listed with a single (paginated) {@code listAttributes} call. Unless the task filter
+     * is disabled, container instances that aren't ACTIVE (e.g. DRAINING) are skipped, as listed with a single
+     * (paginated) {@code listContainerInstances} call.
+     */
+    private void resolveIpAddressesByAttribute(String clusterName,
+                                               List<String> containerInstanceArns,
+                                               Map<String, String> ipAddressByContainerInstanceArn) {
+
+        Map<String, String> ipAddressByContainerInstanceId = new HashMap<>();
+        ListAttributesRequest request = new ListAttributesRequest()
+                .withCluster(clusterName)
+                .withTargetType(TargetType.ContainerInstance)
+                .withAttributeName(hostAddressAttribute);
+
+        try {
+            do {
+                ListAttributesResult result = throttle.call(AmazonECSDiscoveryApi.LIST_ATTRIBUTES,
+                        () -> ecsClient.listAttributes(request));
+                if (result.getAttributes() != null) {
+                    for (Attribute attribute : result.getAttributes()) {
+                        if (attribute.getTargetId() != null && attribute.getValue() != null) {
+                            ipAddressByContainerInstanceId.put(
+                                    getResourceId(attribute.getTargetId()), attribute.getValue());
+                        }
+                    }
+                }
+                request.setNextToken(result.getNextToken());
+            } while (request.getNextToken() != null);
+        } catch (Exception e) {
+            failures.increment();
+            getLogger().severe("Failed to list ECS container instance attribute " + hostAddressAttribute, e);
+            return;
+        }
+
+        Set<String> activeContainerInstanceIds = null;
+        if (taskFilter != TaskFilter.NONE) {
+            activeContainerInstanceIds = getActiveContainerInstanceIds(clusterName);
+            if (activeContainerInstanceIds == null) {
+                return;
+            }
+        }
+
+        for (String containerInstanceArn : containerInstanceArns) {
+            if (activeContainerInstanceIds != null
+                    && !activeContainerInstanceIds.contains(getResourceId(containerInstanceArn))) {
+                if (getLogger().isFineEnabled()) {
+                    getLogger().fine("Skipping tasks on ECS container instance [" + containerInstanceArn
+                            + "]; it isn't ACTIVE");
+                }
+                continue;
+            }
+            String ipAddress = ipAddressByContainerInstanceId.get(getResourceId(containerInstanceArn));
+            if (ipAddress == null) {
+                getLogger().warning("Attribute " + hostAddressAttribute + " not found for ECS container instance: "
+                        + containerInstanceArn);
+                continue;
+            }
+            ipAddressByContainerInstanceArn.put(containerInstanceArn, ipAddress);
+            containerInstanceAddressCache.put(containerInstanceArn, ipAddress);
+        }
     }
 
-    private NetworkBinding getHazelcastNetworkBinding(Container container) {
-        return container.getNetworkBindings().stream()
-                .peek(networkBinding -> getLogger().fine(
-                        "Found network binding for ECS container ["
-                                + container.getContainerArn() + "]: " + networkBinding))
-                .filter(networkBinding -> networkBinding.getContainerPort() == containerPort)
-                .peek(networkBinding -> getLogger().fine(
-                        "Identified Hazelcast network binding for ECS container ["
-                                + container.getContainerArn() + "]: " + networkBinding))
-                .findFirst().orElse(null);
+    /**
+     * @return the IDs of all ACTIVE container instances in the cluster, or null if they couldn't be listed
+     */
+    private Set<String> getActiveContainerInstanceIds(String clusterName) {
+        Set<String> containerInstanceIds = new HashSet<>();
+        ListContainerInstancesRequest request = new ListContainerInstancesRequest()
+                .withCluster(clusterName)
+                .withStatus(ACTIVE_STATUS)
+                .withMaxResults(MAX_DESCRIBE_BATCH_SIZE);
+
+        try {
+            do {
+                ListContainerInstancesResult result = throttle.call(AmazonECSDiscoveryApi.LIST_CONTAINER_INSTANCES,
+                        () -> ecsClient.listContainerInstances(request));
+                if (result.getContainerInstanceArns() != null) {
+                    for (String containerInstanceArn : result.getContainerInstanceArns()) {
+                        containerInstanceIds.add(getResourceId(containerInstanceArn));
+                    }
+                }
+                request.setNextToken(result.getNextToken());
+            } while (request.getNextToken() != null);
+        } catch (Exception e) {
+            failures.increment();
+            getLogger().severe("Failed to list active ECS container instances", e);
+            return null;
+        }
+
+        return containerInstanceIds;
     }
 
-    private String getIpAddress(ContainerInstance containerInstance) {
+    /**
+     * @return the ID of the resource an ARN identifies (the part after the last {@code /}); IDs are returned as is
+     */
+    private static String getResourceId(String arnOrId) {
+        return arnOrId.substring(arnOrId.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Parses a host tag: {@code key=value}, or just {@code key} for any value.
+     */
+    private static Filter parseTagFilter(String hostTag) {
+        int separator = hostTag.indexOf('=');
+        if (separator < 0) {
+            return new Filter("tag-key", Collections.singletonList(hostTag.trim()));
+        }
+        return new Filter("tag:" + hostTag.substring(0, separator).trim(),
+                Collections.singletonList(hostTag.substring(separator + 1).trim()));
+    }
+
+    private String getIpAddress(ContainerInstance containerInstance, Instance ec2Instance) {
         if (containerInstance == null) {
             return null;
         }
 
-        Instance ec2Instance = getEc2Instance(containerInstance);
         if (ec2Instance == null) {
             getLogger().warning("EC2 instance not found for ECS container instance: "
                     + containerInstance.getContainerInstanceArn());
@@ -150,114 +1479,428 @@ public class AmazonECSDiscoveryStrategy extends AbstractDiscoveryStrategy {
         }
 
         String ipAddress = ec2Instance.getPrivateIpAddress();
-        getLogger().fine("Private IP address of ECS container instance ["
-                + containerInstance.getContainerInstanceArn() + "]: " + ipAddress);
+        if (getLogger().isFineEnabled()) {
+            getLogger().fine("Private IP address of ECS container instance ["
+                    + containerInstance.getContainerInstanceArn() + "]: " + ipAddress);
+        }
         return ipAddress;
     }
 
-    private Stream<Task> getTasks() {
-        List<String> taskArns = getTaskArns();
+    /**
+     * Enumerates all tasks in the cluster/service. Each page of task ARNs returned by {@code listTasks} is described
+     * asynchronously, in batches of at most {@link AmazonECSDiscoveryProperties#BATCH_SIZE} (at most
+     * {@value #MAX_DESCRIBE_BATCH_SIZE}), while subsequent pages are still being listed. Each known task ARN is handed
+     * to {@code knownTaskConsumer} as soon as it is listed, and each batch of described tasks to
+     * {@code describedTasksConsumer} as soon as it is described, in the order the batches complete. Both consumers are
+     * called on the calling thread.
+     *
+     * @param knownTaskArns ARNs of tasks that have already been described and don't need to be described again
+     */
+    private TaskListing getTasks(DiscoverySource source,
+                                 Set<String> knownTaskArns,
+                                 Consumer<String> knownTaskConsumer,
+                                 Consumer<List<Task>> describedTasksConsumer) {
 
-        if (taskArns.size() > 0) {
-            DescribeTasksRequest describeTasksRequest = new DescribeTasksRequest()
-                    .withCluster(clusterName)
-                    .withTasks(taskArns);
+        TaskListing taskListing = new TaskListing();
+        BlockingQueue<List<Task>> describedTasksBatches = new LinkedBlockingQueue<>();
+        // Number of describe batches submitted and consumed so far
+        int[] submittedBatches = new int[1];
+        int[] consumedBatches = new int[1];
 
-            List<Task> tasks = null;
-            try {
-                tasks = ecsClient.describeTasks(describeTasksRequest).getTasks();
-            } catch (Exception e) {
-                getLogger().severe("Failed to retrieve ECS task details", e);
+        taskListing.complete = forEachTaskArnPage(source, taskArns -> {
+            taskListing.taskArns.addAll(taskArns);
+
+            List<String> newTaskArns = new ArrayList<>();
+            for (String taskArn : taskArns) {
+                if (knownTaskArns.contains(taskArn)) {
+                    knownTaskConsumer.accept(taskArn);
+                } else {
+                    newTaskArns.add(taskArn);
+                }
             }
 
-            if (tasks != null && tasks.size() > 0) {
-                tasks.forEach(task -> getLogger().fine("ECS task details: " + task));
-                return tasks.stream().filter(Objects::nonNull);
+            for (List<String> batch : partition(newTaskArns, batchSize)) {
+                submittedBatches[0]++;
+                callAsync(executor, () -> describeTasks(source.getClusterName(), batch))
+                        .whenComplete((tasks, e) -> {
+                            if (e != null) {
+                                failures.increment();
+                            }
+                            describedTasksBatches.add(tasks != null ? tasks : Collections.emptyList());
+                        });
             }
+
+            // Consume the batches described so far while the next page is listed
+            for (List<Task> tasks = describedTasksBatches.poll(); tasks != null; tasks = describedTasksBatches.poll()) {
+                consumedBatches[0]++;
+                taskListing.describedTasks += tasks.size();
+                describedTasksConsumer.accept(tasks);
+            }
+        });
+
+        try {
+            for (; consumedBatches[0] < submittedBatches[0]; consumedBatches[0]++) {
+                List<Task> tasks = describedTasksBatches.take();
+                taskListing.describedTasks += tasks.size();
+                describedTasksConsumer.accept(tasks);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.increment();
+            taskListing.complete = false;
+        }
+
+        if (taskListing.describedTasks == 0 && submittedBatches[0] > 0) {
             getLogger().warning("No ECS task details found");
         }
 
-        return Stream.empty();
+        return taskListing;
     }
 
-    private List<String> getTaskArns() {
+    private List<Task> describeTasks(String clusterName, List<String> taskArns) {
+        DescribeTasksRequest describeTasksRequest = new DescribeTasksRequest()
+                .withCluster(clusterName)
+                .withTasks(taskArns);
+
+        List<Task> tasks = null;
+        try {
+            tasks = throttle.call(AmazonECSDiscoveryApi.DESCRIBE_TASKS,
+                    () -> ecsClient.describeTasks(describeTasksRequest)).getTasks();
+        } catch (Exception e) {
+            failures.increment();
+            getLogger().severe("Failed to retrieve ECS task details", e);
+        }
+
+        if (tasks == null || tasks.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        boolean fineEnabled = getLogger().isFineEnabled();
+        List<Task> describedTasks = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            if (task != null) {
+                if (fineEnabled) {
+                    getLogger().fine("ECS task details: " + task);
+                }
+                describedTasks.add(task);
+            }
+        }
+        return describedTasks;
+    }
+
+    /**
+     * Lists the ARNs of all tasks in the cluster/service, following {@code nextToken} across pages, and hands each
+     * non-empty page to the given consumer as soon as it has been retrieved.
+     *
+     * @return true if all pages were listed, false if listing failed part way through
+     */
+    private boolean forEachTaskArnPage(DiscoverySource source, Consumer<List<String>> pageConsumer) {
         ListTasksRequest listTasksRequest = new ListTasksRequest()
-                .withCluster(clusterName);
+                .withCluster(source.getClusterName())
+                .withMaxResults(batchSize);
+
+        // With the task filter disabled, ECS applies its own default desired status filter
+        if (taskFilter != TaskFilter.NONE) {
+            listTasksRequest.setDesiredStatus(DesiredStatus.RUNNING);
+        }
+        if (source.getServiceName() != null) {
+            listTasksRequest.setServiceName(source.getServiceName());
+        }
+        if (source.getFamily() != null) {
+            listTasksRequest.setFamily(source.getFamily());
+        }
+
+        boolean found = false;
+        String nextToken = null;
+        do {
+            listTasksRequest.setNextToken(nextToken);
+
+            ListTasksResult listTasksResult;
+            try {
+                listTasksResult = throttle.call(AmazonECSDiscoveryApi.LIST_TASKS,
+                        () -> ecsClient.listTasks(listTasksRequest));
+            } catch (Exception e) {
+                getLogger().severe("Failed to get list of ECS tasks", e);
+                return false;
+            }
+
+            if (listTasksResult == null) {
+                return false;
+            }
 
-        if (serviceName != null) {
-            listTasksRequest.setServiceName(serviceName);
+            List<String> taskArns = listTasksResult.getTaskArns();
+            if (taskArns != null && taskArns.size() > 0) {
+                if (getLogger().isFineEnabled()) {
+                    getLogger().fine("Found ECS tasks: " + taskArns);
+                }
+                pageConsumer.accept(taskArns);
+                found = true;
+            }
+
+            nextToken = listTasksResult.getNextToken();
+        } while (nextToken != null);
+
+        if (!found) {
+            getLogger().warning("No ECS tasks found");
         }
+        return true;
+    }
 
-        List<String> taskArns = null;
-        try {
-            taskArns = ecsClient.listTasks(listTasksRequest).getTaskArns();
-        } catch (Exception e) {
-            getLogger().severe("Failed to get list of ECS tasks", e);
+    /**
+     * @return the distinct container instances hosting the given tasks, excluding awsvpc tasks, which are reachable
+     * without resolving their container instance
+     */
+    private List<String> getContainerInstanceArns(List<Task> tasks) {
+        Set<String> containerInstanceArns = new LinkedHashSet<>();
+        for (Task task : tasks) {
+            if (task.getContainerInstanceArn() != null && isOnContainerInstanceAddress(task)) {
+                containerInstanceArns.add(task.getContainerInstanceArn());
+            }
         }
+        return new ArrayList<>(containerInstanceArns);
+    }
+
+    private List<ContainerInstance> getContainerInstances(String clusterName,
+                                                          Collection<String> containerInstanceArns) {
+        List<ContainerInstance> containerInstances = new ArrayList<>(containerInstanceArns.size());
+
+        for (List<String> batch : partition(containerInstanceArns, batchSize)) {
+            DescribeContainerInstancesRequest request = new DescribeContainerInstancesRequest()
+                    .withCluster(clusterName)
+                    .withContainerInstances(batch);
 
-        if (taskArns != null && taskArns.size() > 0) {
-            taskArns.forEach(taskArn -> getLogger().fine("Found ECS task: " + taskArn));
-            return taskArns;
+            try {
+                List<ContainerInstance> batchContainerInstances = throttle.call(
+                        AmazonECSDiscoveryApi.DESCRIBE_CONTAINER_INSTANCES,
+                        () -> ecsClient.describeContainerInstances(request)).getContainerInstances();
+                if (batchContainerInstances != null) {
+                    for (ContainerInstance containerInstance : batchContainerInstances) {
+                        if (containerInstance != null) {
+                            if (getLogger().isFineEnabled()) {
+                                getLogger().fine("Found ECS container instance: " + containerInstance);
+                            }
+                            containerInstances.add(containerInstance);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                failures.increment();
+                getLogger().severe("Failed to get ECS container instances " + batch, e);
+            }
         }
 
-        getLogger().warning("No ECS tasks found");
-        return Collections.emptyList();
+        if (containerInstances.isEmpty() && !containerInstanceArns.isEmpty()) {
+            getLogger().warning("No ECS container instances found for ECS container instance ARNs "
+                    + containerInstanceArns);
+        }
+
+        return containerInstances;
     }
 
-    private ContainerInstance getContainerInstance(Task task) {
-        if (task == null) {
-            return null;
+    private Map<String, Instance> getEc2Instances(Collection<ContainerInstance> containerInstances) {
+        Set<String> ec2InstanceIds = new LinkedHashSet<>();
+        for (ContainerInstance containerInstance : containerInstances) {
+            if (containerInstance.getEc2InstanceId() != null) {
+                ec2InstanceIds.add(containerInstance.getEc2InstanceId());
+            }
         }
+        return getEc2InstancesById(ec2InstanceIds);
+    }
 
-        DescribeContainerInstancesRequest request = new DescribeContainerInstancesRequest()
-                .withCluster(clusterName)
-                .withContainerInstances(Collections.singletonList(task.getContainerInstanceArn()));
+    private Map<String, Instance> getEc2InstancesById(Collection<String> ec2InstanceIds) {
+        Map<String, Instance> ec2InstancesById = new HashMap<>();
+
+        for (List<String> batch : partition(ec2InstanceIds, batchSize)) {
+            DescribeInstancesRequest request = new DescribeInstancesRequest()
+                    .withInstanceIds(batch);
+
+            List<Reservation> reservations = null;
+            try {
+                reservations = throttle.call(AmazonECSDiscoveryApi.DESCRIBE_INSTANCES,
+                        () -> ec2Client.describeInstances(request)).getReservations();
+            } catch (Exception e) {
+                failures.increment();
+                getLogger().severe("Failed to get EC2 instances " + batch, e);
+            }
 
-        List<ContainerInstance> containerInstances = null;
+            if (reservations != null) {
+                for (Reservation reservation : reservations) {
+                    if (reservation == null || reservation.getInstances() == null) {
+                        continue;
+                    }
+                    for (Instance instance : reservation.getInstances()) {
+                        if (instance != null && instance.getInstanceId() != null) {
+                            ec2InstancesById.put(instance.getInstanceId(), instance);
+                        }
+                    }
+                }
+            }
+        }
 
+        return ec2InstancesById;
+    }
+
+    private <E extends Enum<E>> E parseEnum(Class<E> type, PropertyDefinition property, String defaultValue) {
+        String value = getOrDefault(property, defaultValue);
         try {
-            containerInstances = ecsClient.describeContainerInstances(request).getContainerInstances();
-        } catch (Exception e) {
-            getLogger().severe(
-                    "Failed to get ECS container instances for ECS task [" + task.getTaskArn() + "]", e);
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidConfigurationException("Unsupported " + property.key() + ": " + value
+                    + "; expected one of " + Arrays.stream(type.getEnumConstants())
+                    .map(constant -> constant.name().toLowerCase(Locale.ROOT))
+                    .collect(Collectors.joining(", ")));
         }
+    }
 
-        if (containerInstances != null && containerInstances.size() > 0) {
-            // We provided a single container instance ARN, so we expect a single ContainerInstance
-            ContainerInstance containerInstance = containerInstances.get(0);
-            getLogger().fine("Found ECS container instance: " + containerInstance);
-            return containerInstance;
+    private int getPositiveInt(PropertyDefinition property, int defaultValue) {
+        int value = getOrDefault(property, defaultValue);
+        if (value <= 0) {
+            throw new InvalidConfigurationException("Unsupported " + property.key() + ": " + value
+                    + "; expected a positive number");
         }
+        return value;
+    }
 
-        getLogger().warning("No ECS container instances found for ECS task [" + task.getTaskArn() + "]");
-        return null;
+    /**
+     * Runs a call on the given executor. Calls that are still queued or running when the strategy is destroyed, and
+     * calls submitted after that, are cancelled, so that a discovery waiting for them fails rather than waits forever.
+     */
+    private <T> CompletableFuture<T> callAsync(ExecutorService callExecutor, Supplier<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        // Registered before it is submitted, so that destroy() either cancels it or the executor rejects it
+        pendingCalls.add(future);
+        future.whenComplete((result, e) -> pendingCalls.remove(future));
+        try {
+            callExecutor.execute(() -> {
+                try {
+                    future.complete(call.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.cancel(false);
+        }
+        return future;
     }
 
-    private Instance getEc2Instance(ContainerInstance containerInstance) {
-        if (containerInstance == null) {
-            return null;
+    /**
+     * @return the result of a call run by {@link #callAsync}, or the given fallback if it was cancelled because the
+     * strategy was destroyed, which counts as a failure
+     */
+    private <T> T joinCall(CompletableFuture<T> call, T fallback) {
+        try {
+            return call.join();
+        } catch (CancellationException e) {
+            failures.increment();
+            return fallback;
         }
+    }
 
-        DescribeInstancesRequest request = new DescribeInstancesRequest()
-                .withInstanceIds(Collections.singletonList(containerInstance.getEc2InstanceId()));
+    /**
+     * Creates an executor that runs at most {@code parallelism} describe calls at a time and lets its threads expire
+     * while discovery is idle.
+     */
+    private static ExecutorService newBoundedExecutor(int parallelism) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DiscoveryThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
-        List<Reservation> reservations = null;
-        try {
-            reservations = ec2Client.describeInstances(request).getReservations();
-        } catch (Exception e) {
-            getLogger().severe("Failed to get EC2 instance for ECS container instance ["
-                    + containerInstance.getContainerInstanceArn() + "]", e);
+    /**
+     * Splits the given items into consecutive batches of at most {@code batchSize} items each, preserving order.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> List<List<T>> partition(Collection<T> items, int batchSize) {
+        List<T> list = items instanceof List ? (List<T>) items : new ArrayList<>(items);
+        List<List<T>> batches = new ArrayList<>((list.size() + batchSize - 1) / batchSize);
+        for (int i = 0; i < list.size(); i += batchSize) {
+            batches.add(list.subList(i, Math.min(i + batchSize, list.size())));
         }
+        return batches;
+    }
 
-        if (reservations != null && reservations.size() > 0) {
-            // We provided single EC2 instance ID, so we expect a single Reservation and a single Instance
-            List<Instance> instances = reservations.get(0).getInstances();
-            if (instances.size() > 0) {
-                return instances.get(0);
+    /**
+     * How the address of a task is resolved; see {@link AmazonECSDiscoveryProperties#NETWORK_MODE}.
+     */
+    enum NetworkMode {
+        AUTO, BRIDGE, AWSVPC
+    }
+
+    /**
+     * How container instance addresses are resolved; see {@link AmazonECSDiscoveryProperties#HOST_RESOLUTION}.
+     */
+    enum HostResolution {
+        DESCRIBE, TAG, ATTRIBUTE
+    }
+
+    /**
+     * Which tasks are discovered; see {@link AmazonECSDiscoveryProperties#TASK_FILTER}.
+     */
+    enum TaskFilter {
+        NONE, RUNNING, HEALTHY
+    }
+
+    /**
+     * Passes each discovered node to a consumer once, one node at a time.
+     */
+    private static final class NodeEmitter {
+
+        /** Emits nothing, for discoveries nobody streams nodes from. */
+        static final NodeEmitter NONE = new NodeEmitter(null);
+
+        private final Consumer<? super DiscoveryNode> consumer;
+        private final Set<Address> emittedAddresses = new HashSet<>();
+
+        NodeEmitter(Consumer<? super DiscoveryNode> consumer) {
+            this.consumer = consumer;
+        }
+
+        void emit(DiscoveredTask discoveredTask) {
+            if (consumer != null && discoveredTask != null) {
+                emitAll(discoveredTask.getNodes());
             }
         }
 
-        return null;
+        synchronized void emitAll(Collection<DiscoveryNode> nodes) {
+            if (consumer == null) {
+                return;
+            }
+            for (DiscoveryNode node : nodes) {
+                if (emittedAddresses.add(node.getPrivateAddress())) {
+                    consumer.accept(node);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The outcome of resolving the nodes in a discovery source.
+     */
+    private static final class SourceResolution {
+
+        private boolean complete;
+        private int nodesAdded;
+        private int nodesRemoved;
+
+    }
+
+    /**
+     * The outcome of enumerating the tasks in a discovery source.
+     */
+    private static final class TaskListing {
+
+        /** ARNs of all tasks listed. */
+        private final Set<String> taskArns = new HashSet<>();
+
+        /** Number of tasks that were described, i.e. listed tasks that were not already known. */
+        private int describedTasks;
+
+        /** Whether all pages of task ARNs were listed successfully. */
+        private boolean complete;
+
     }
 
 }
@@ -25,16 +25,32 @@ import com.hazelcast.spi.discovery.DiscoveryStrategy;
 import com.hazelcast.spi.discovery.DiscoveryStrategyFactory;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Map;
 
 @SuppressWarnings("unused")
 public class AmazonECSDiscoveryStrategyFactory implements DiscoveryStrategyFactory {
 
-    private final AmazonECS ecsClient;
-    private final AmazonEC2 ec2Client;
+    private AmazonECS ecsClient;
+    private AmazonEC2 ec2Client;
     private final int containerPort;
-    
+
+    /**
+     * Creates a factory for declarative (e.g. {@code hazelcast.xml}) configuration, which is configured entirely
+     * through {@link AmazonECSDiscoveryProperties}. The ECS and EC2 clients tuned for discovery that are shared by
+     * all strategies in the JVM are used.
+     */
+    public AmazonECSDiscoveryStrategyFactory() {
+        this(AmazonECSDiscoveryProperties.DEFAULT_CONTAINER_PORT);
+    }
+
+    /**
+     * Creates a factory using the ECS and EC2 clients tuned for discovery that are shared by all strategies in the
+     * JVM. They are built from the default credentials provider chain when the first strategy is created.
+     */
+    public AmazonECSDiscoveryStrategyFactory(int containerPort) {
+        this(null, null, containerPort);
+    }
+
     public AmazonECSDiscoveryStrategyFactory(AmazonECS ecsClient, AmazonEC2 ec2Client, int containerPort) {
         this.ecsClient = ecsClient;
         this.ec2Client = ec2Client;
@@ -48,14 +64,28 @@ public class AmazonECSDiscoveryStrategyFactory implements DiscoveryStrategyFacto
 
     @Override
     public Collection<PropertyDefinition> getConfigurationProperties() {
-        return Collections.unmodifiableCollection(Collections.emptyList());
+        return AmazonECSDiscoveryProperties.ALL;
     }
 
     @Override
-    public DiscoveryStrategy newDiscoveryStrategy(DiscoveryNode discoveryNode,
-                                                  ILogger logger,
-                                                  Map<String, Comparable> properties) {
-        
+    public synchronized DiscoveryStrategy newDiscoveryStrategy(DiscoveryNode discoveryNode,
+                                                               ILogger logger,
+                                                               Map<String, Comparable> properties) {
+
+        if (ecsClient == null || ec2Client == null) {
+            Comparable discoveryParallelism = properties.get(AmazonECSDiscoveryProperties.DISCOVERY_PARALLELISM.key());
+            AmazonECSDiscoveryClients clients = AmazonECSDiscoveryClients.shared(discoveryParallelism != null
+                    ? (Integer) AmazonECSDiscoveryProperties.DISCOVERY_PARALLELISM.typeConverter()
+                            .convert(discoveryParallelism)
+                    : AmazonECSDiscoveryProperties.DEFAULT_DISCOVERY_PARALLELISM);
+            if (ecsClient == null) {
+                ecsClient = clients.getEcsClient();
+            }
+            if (ec2Client == null) {
+                ec2Client = clients.getEc2Client();
+            }
+        }
+
         return new AmazonECSDiscoveryStrategy(logger, properties, ecsClient, ec2Client, containerPort);
     }
     
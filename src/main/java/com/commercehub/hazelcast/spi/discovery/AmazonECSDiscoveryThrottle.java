@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Rate limits the ECS and EC2 API calls made for discovery and retries throttled calls.<br>
+ *
+ * All calls made in the JVM share a single token bucket, and a throttling error drains it, so that every discovery
+ * strategy in the JVM backs off together rather than each one retrying independently. Throttled calls are retried
+ * with "decorrelated jitter" exponential backoff, which spreads retries from many members starting at once over time.
+ */
+class AmazonECSDiscoveryThrottle {
+
+    static final double DEFAULT_REQUESTS_PER_SECOND = 20;
+    static final int DEFAULT_BURST = 40;
+    static final int DEFAULT_MAX_ATTEMPTS = 5;
+    static final long DEFAULT_BASE_DELAY_MILLIS = 100;
+    static final long DEFAULT_MAX_DELAY_MILLIS = 10_000;
+
+    /** Token buckets shared by all throttles in the JVM with the same rate and burst, keyed by "rate/burst". */
+    private static final Map<String, TokenBucket> tokenBuckets = new ConcurrentHashMap<>();
+
+    static final AmazonECSDiscoveryThrottle SHARED = shared(DEFAULT_REQUESTS_PER_SECOND, DEFAULT_BURST,
+            DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+
+    private static final Log log = LogFactory.getLog(AmazonECSDiscoveryThrottle.class);
+
+    private final TokenBucket tokenBucket;
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final Sleeper sleeper;
+
+    AmazonECSDiscoveryThrottle(TokenBucket tokenBucket, int maxAttempts, long baseDelayNanos, long maxDelayNanos,
+                               Sleeper sleeper) {
+        this.tokenBucket = tokenBucket;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayNanos = baseDelayNanos;
+        this.maxDelayNanos = Math.max(baseDelayNanos, maxDelayNanos);
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * @return a throttle using the JVM-wide token bucket for the given rate and burst
+     */
+    static AmazonECSDiscoveryThrottle shared(double requestsPerSecond, int burst, int maxAttempts,
+                                             long baseDelayMillis, long maxDelayMillis) {
+        TokenBucket tokenBucket = tokenBuckets.computeIfAbsent(requestsPerSecond + "/" + burst,
+                key -> new TokenBucket(requestsPerSecond, burst));
+        return new AmazonECSDiscoveryThrottle(tokenBucket, maxAttempts, TimeUnit.MILLISECONDS.toNanos(baseDelayMillis),
+                TimeUnit.MILLISECONDS.toNanos(maxDelayMillis), TimeUnit.NANOSECONDS::sleep);
+    }
+
+    /**
+     * Makes a remote API call once a token is available, retrying it while it is throttled.
+     *
+     * @throws AmazonServiceException the last throttling error if the call is still throttled after the maximum
+     * number of attempts, or any other error the call fails with
+     */
+    <T> T call(AmazonECSDiscoveryApi api, Supplier<T> call) {
+        long delayNanos = baseDelayNanos;
+        for (int attempt = 1; ; attempt++) {
+            await(tokenBucket.reserve());
+
+            try {
+                return AmazonECSDiscoveryMetrics.record(api, call);
+            } catch (AmazonServiceException e) {
+                if (!RetryUtils.isThrottlingException(e) || attempt >= maxAttempts) {
+                    throw e;
+                }
+
+                tokenBucket.drain();
+                delayNanos = nextDelayNanos(delayNanos);
+                log.debug(api + " call throttled (attempt " + attempt + " of " + maxAttempts + "); retrying in "
+                        + TimeUnit.NANOSECONDS.toMillis(delayNanos) + " ms");
+                await(delayNanos);
+            }
+        }
+    }
+
+    /**
+     * @return a random delay between the base delay and three times the previous delay, capped at the maximum delay
+     */
+    long nextDelayNanos(long previousDelayNanos) {
+        long upperBound = Math.min(maxDelayNanos, Math.max(baseDelayNanos, previousDelayNanos) * 3);
+        if (upperBound <= baseDelayNanos) {
+            return baseDelayNanos;
+        }
+        return ThreadLocalRandom.current().nextLong(baseDelayNanos, upperBound + 1);
+    }
+
+    private void await(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+
+        try {
+            sleeper.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException("Interrupted while waiting to call AWS", e);
+        }
+    }
+
+    @FunctionalInterface
+    interface Sleeper {
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+}
@@ -19,20 +19,59 @@ package com.commercehub.hazelcast.spi.discovery;
 import com.amazonaws.services.ecs.AmazonECS;
 import com.amazonaws.services.ecs.model.Container;
 import com.amazonaws.services.ecs.model.DescribeTasksRequest;
+import com.amazonaws.services.ecs.model.ListTasksRequest;
+import com.amazonaws.services.ecs.model.NetworkBinding;
 import com.amazonaws.services.ecs.model.Task;
 import com.amazonaws.util.EC2MetadataUtils;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 public class AmazonECSDiscoveryUtils {
 
+    static final String AWSVPC_NETWORK_MODE = "awsvpc";
+
+    /** Maximum number of lookups {@link #bootstrap} runs concurrently. */
+    private static final int BOOTSTRAP_PARALLELISM = 4;
+
     private final AmazonECS amazonECS;
+    private final AmazonECSDiscoveryThrottle throttle;
+
+    private final Object selfIdentityLock = new Object();
+    private volatile SelfIdentity selfIdentity;
+    private volatile AmazonECSAgentIntrospectionUtils.TaskMetadata taskMetadata;
+
+    /**
+     * Creates utilities using the ECS client tuned for discovery that is shared by all strategies in the JVM.
+     */
+    public AmazonECSDiscoveryUtils() {
+        this(AmazonECSDiscoveryClients.shared(AmazonECSDiscoveryProperties.DEFAULT_DISCOVERY_PARALLELISM)
+                .getEcsClient());
+    }
 
     public AmazonECSDiscoveryUtils(AmazonECS amazonECS) {
+        this(amazonECS, AmazonECSDiscoveryThrottle.SHARED);
+    }
+
+    /**
+     * Creates utilities whose ECS calls go through the given throttle, e.g. the one configured for a strategy.
+     */
+    AmazonECSDiscoveryUtils(AmazonECS amazonECS, AmazonECSDiscoveryThrottle throttle) {
         this.amazonECS = amazonECS;
+        this.throttle = throttle;
     }
 
     /**
@@ -43,6 +82,9 @@ public class AmazonECSDiscoveryUtils {
      */
     public String discoverClusterName() throws ClusterNameDiscoveryException {
         try {
+            if (AmazonECSAgentIntrospectionUtils.isTaskMetadataAvailable()) {
+                return getTaskMetadata().getCluster();
+            }
             return AmazonECSAgentIntrospectionUtils.getMetadata().getCluster();
         } catch (Exception e) {
             throw new ClusterNameDiscoveryException("Cluster name discovery failed", e);
@@ -58,17 +100,10 @@ public class AmazonECSDiscoveryUtils {
      */
     public Optional<String> discoverServiceName(String clusterName) throws ServiceNameDiscoveryException {
         try {
-            String[] groupParts = getTask(clusterName, getAgentTask(getShortContainerId()).getArn())
-                    .getGroup().split(":");
-            if (groupParts.length == 2 && "service".equals(groupParts[0])) {
-                return Optional.of(groupParts[1]);
-            }
+            return Optional.ofNullable(getSelfIdentity(clusterName).getServiceName());
         } catch (Exception e) {
             throw new ServiceNameDiscoveryException(e);
         }
-
-        // The task group indicates that the task is not part of a service
-        return Optional.empty();
     }
 
     /**
@@ -87,33 +122,230 @@ public class AmazonECSDiscoveryUtils {
             throws PublicHazelcastAddressDiscoveryException {
 
         try {
-            return getContainer(discoverClusterName(), getShortContainerId()).getNetworkBindings().stream()
-                    .filter(networkBinding -> networkBinding.getContainerPort() == containerPort)
-                    .map(networkBinding -> EC2MetadataUtils.getPrivateIpAddress() + ":" + networkBinding.getHostPort())
-                    .findFirst()
+            SelfIdentity identity = getSelfIdentity(discoverClusterName());
+            NetworkBinding networkBinding = getNetworkBinding(identity, containerPort)
                     .orElseThrow(PublicHazelcastAddressNotFoundException::new);
+
+            String ipAddress = identity.getIpAddress() != null
+                    ? identity.getIpAddress() : EC2MetadataUtils.getPrivateIpAddress();
+            return ipAddress + ":" + networkBinding.getHostPort();
         } catch (Exception e) {
             throw new PublicHazelcastAddressDiscoveryException("Public address discovery failed", e);
         }
     }
 
-    private Container getContainer(
-            String clusterName, String shortContainerId) throws AmazonECSDiscoveryException {
+    /**
+     * Resolves everything needed to configure Hazelcast for this process: the cluster and service names for the
+     * discovery strategy, and the public Hazelcast address. Lookups that don't depend on each other (e.g. the cluster
+     * name and this container's task, or this host's private IP address) run concurrently rather than one retry loop
+     * after the other. The identity is cached, so the discover methods of this instance return without further
+     * lookups afterwards. Once the identity is known, a {@code listTasks} call for a single task of the service makes
+     * the ECS client resolve its credentials and open a connection before the first discovery; it doesn't populate
+     * any discovery state, and its failures are ignored.
+     *
+     * @param containerPort the port Hazelcast is listening on inside the container this process is running in
+     * @param timeout the deadline for the whole bootstrap, after which the future completes exceptionally with a
+     *                {@link TimeoutException}
+     * @return a future completing with the bootstrap result, or exceptionally with the
+     * {@link AmazonECSDiscoveryException} of the first lookup that failed
+     */
+    public CompletableFuture<AmazonECSBootstrap> bootstrap(int containerPort, long timeout, TimeUnit unit) {
+        ScheduledThreadPoolExecutor executor =
+                new ScheduledThreadPoolExecutor(BOOTSTRAP_PARALLELISM, new DiscoveryThreadFactory());
+        // The timeout is cancelled on completion, but the warm-up call may still be queued then, and has to run
+        executor.setRemoveOnCancelPolicy(true);
+
+        boolean taskMetadataAvailable = AmazonECSAgentIntrospectionUtils.isTaskMetadataAvailable();
+        CompletableFuture<SelfIdentity> identity = discoverSelfIdentityAsync(executor);
+        // Tasks on EC2 container instances are reachable on the host's address, which is looked up in the meantime
+        CompletableFuture<String> hostIpAddress = taskMetadataAvailable
+                ? null : lookUpAsync(EC2MetadataUtils::getPrivateIpAddress, executor);
+
+        CompletableFuture<AmazonECSBootstrap> result = identity.thenCompose(self -> {
+            executor.execute(() -> warmUp(self));
+
+            Optional<NetworkBinding> networkBinding = getNetworkBinding(self, containerPort);
+            if (!networkBinding.isPresent()) {
+                throw new CompletionException(new PublicHazelcastAddressNotFoundException());
+            }
+            int hostPort = networkBinding.get().getHostPort();
+            CompletableFuture<String> ipAddress = self.getIpAddress() != null
+                    ? CompletableFuture.completedFuture(self.getIpAddress())
+                    : hostIpAddress != null ? hostIpAddress
+                    : lookUpAsync(EC2MetadataUtils::getPrivateIpAddress, executor);
+            return ipAddress.thenApply(address -> new AmazonECSBootstrap(self, address + ":" + hostPort));
+        });
+
+        ScheduledFuture<?> timeoutFuture = completeOnTimeout(result, executor, timeout, unit);
+        result.whenComplete((bootstrap, e) -> {
+            timeoutFuture.cancel(false);
+            if (e != null) {
+                // Abandon the lookups still in progress
+                executor.shutdownNow();
+            } else {
+                executor.shutdown();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Discovers the cluster name like {@link #discoverClusterName()}, on the given executor.
+     */
+    CompletableFuture<String> discoverClusterNameAsync(Executor executor) {
+        return lookUpAsync(this::discoverClusterName, executor);
+    }
+
+    /**
+     * Resolves the identity of this process like {@link #getSelfIdentity(String)}, also discovering the cluster name,
+     * but looks up this container's task concurrently with the cluster name.
+     */
+    CompletableFuture<SelfIdentity> discoverSelfIdentityAsync(Executor executor) {
+        CompletableFuture<String> clusterName = discoverClusterNameAsync(executor);
+
+        CompletableFuture<SelfIdentity> identity;
+        if (AmazonECSAgentIntrospectionUtils.isTaskMetadataAvailable()) {
+            CompletableFuture<AmazonECSAgentIntrospectionUtils.ContainerMetadata> containerMetadata =
+                    lookUpAsync(AmazonECSAgentIntrospectionUtils::getContainerMetadata, executor);
+            identity = clusterName.thenCombineAsync(containerMetadata,
+                    (name, metadata) -> lookUp(() -> resolveSelfIdentityFromTaskMetadata(name, metadata)), executor);
+        } else {
+            CompletableFuture<String> shortContainerId = lookUpAsync(this::getShortContainerId, executor);
+            CompletableFuture<AmazonECSAgentIntrospectionUtils.Task> agentTask = shortContainerId.thenApplyAsync(
+                    containerId -> lookUp(() -> getAgentTask(containerId)), executor);
+            identity = clusterName.thenCombineAsync(agentTask, (name, task) -> lookUp(
+                    () -> resolveSelfIdentityFromAgentTask(name, shortContainerId.join(), task)), executor);
+        }
+
+        return identity.thenApply(result -> {
+            synchronized (selfIdentityLock) {
+                selfIdentity = result;
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Returns the identity of the ECS task and container this process is running in. It is resolved once, on first
+     * use, and then shared by all discovery methods, since it can't change while this process is running.
+     *
+     * @param clusterName the name of the ECS cluster this process is running in
+     */
+    SelfIdentity getSelfIdentity(String clusterName) throws AmazonECSDiscoveryException {
+        SelfIdentity result = selfIdentity;
+        if (result == null || !result.getClusterName().equals(clusterName)) {
+            synchronized (selfIdentityLock) {
+                result = selfIdentity;
+                if (result == null || !result.getClusterName().equals(clusterName)) {
+                    result = resolveSelfIdentity(clusterName);
+                    selfIdentity = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private SelfIdentity resolveSelfIdentity(String clusterName) throws AmazonECSDiscoveryException {
+        if (AmazonECSAgentIntrospectionUtils.isTaskMetadataAvailable()) {
+            return resolveSelfIdentityFromTaskMetadata(clusterName,
+                    AmazonECSAgentIntrospectionUtils.getContainerMetadata());
+        }
+
+        String shortContainerId = getShortContainerId();
+        AmazonECSAgentIntrospectionUtils.Task agentTask;
+        try {
+            agentTask = getAgentTask(shortContainerId);
+        } catch (AmazonECSDiscoveryException e) {
+            throw new AmazonECSDiscoveryException(String.format("Container not found for cluster name: %s, " +
+                    "short container ID: %s", clusterName, shortContainerId), e);
+        }
+        return resolveSelfIdentityFromAgentTask(clusterName, shortContainerId, agentTask);
+    }
+
+    private SelfIdentity resolveSelfIdentityFromAgentTask(String clusterName,
+                                                          String shortContainerId,
+                                                          AmazonECSAgentIntrospectionUtils.Task agentTask)
+            throws AmazonECSDiscoveryException {
 
         try {
-            AmazonECSAgentIntrospectionUtils.Task agentTask = getAgentTask(shortContainerId);
             String containerName = getAgentContainer(agentTask, shortContainerId).getName();
-            return getTask(clusterName, agentTask.getArn()).getContainers().stream()
-                    .filter(container -> containerName.equals(container.getName()))
+            Task task = getTask(clusterName, agentTask.getArn());
+            Container container = task.getContainers().stream()
+                    .filter(c -> containerName.equals(c.getName()))
                     .findFirst()
                     .orElseThrow(() -> new AmazonECSDiscoveryException(String.format("Container not found for " +
                             "cluster name: %s, short container ID: %s", clusterName, shortContainerId)));
+
+            return new SelfIdentity(clusterName, agentTask.getArn(), containerName, getServiceName(task),
+                    container.getNetworkBindings(), null);
         } catch (AmazonECSDiscoveryException e) {
             throw new AmazonECSDiscoveryException(String.format("Container not found for cluster name: %s, " +
                     "short container ID: %s", clusterName, shortContainerId), e);
         }
     }
 
+    /**
+     * Resolves the identity of this process from the ECS Task Metadata endpoint, which is local and requires neither
+     * IAM permissions nor ECS API calls. The ECS API is only consulted for the service name when the ECS agent doesn't
+     * report it.
+     */
+    private SelfIdentity resolveSelfIdentityFromTaskMetadata(
+            String clusterName, AmazonECSAgentIntrospectionUtils.ContainerMetadata containerMetadata)
+            throws AmazonECSDiscoveryException {
+
+        AmazonECSAgentIntrospectionUtils.TaskMetadata taskMetadata = getTaskMetadata();
+        if (containerMetadata == null) {
+            throw new AmazonECSDiscoveryException("Container metadata not found");
+        }
+
+        String serviceName = taskMetadata.getServiceName();
+        if (serviceName == null) {
+            serviceName = getServiceName(getTask(clusterName, taskMetadata.getTaskArn()));
+        }
+
+        List<NetworkBinding> networkBindings = containerMetadata.getPorts().stream()
+                .filter(port -> port.getContainerPort() != null)
+                .map(port -> new NetworkBinding()
+                        .withContainerPort(port.getContainerPort())
+                        .withHostPort(port.getHostPort() != null ? port.getHostPort() : port.getContainerPort())
+                        .withBindIP(port.getHostIp())
+                        .withProtocol(port.getProtocol()))
+                .collect(Collectors.toList());
+
+        String ipAddress = containerMetadata.getNetworks().stream()
+                .filter(network -> AWSVPC_NETWORK_MODE.equals(network.getNetworkMode()))
+                .flatMap(network -> network.getIpv4Addresses().stream())
+                .findFirst()
+                .orElse(null);
+
+        return new SelfIdentity(clusterName, taskMetadata.getTaskArn(), containerMetadata.getName(), serviceName,
+                networkBindings, ipAddress);
+    }
+
+    private AmazonECSAgentIntrospectionUtils.TaskMetadata getTaskMetadata() throws AmazonECSDiscoveryException {
+        AmazonECSAgentIntrospectionUtils.TaskMetadata result = taskMetadata;
+        if (result == null) {
+            result = AmazonECSAgentIntrospectionUtils.getTaskMetadata();
+            if (result == null) {
+                throw new AmazonECSDiscoveryException("Task metadata not found");
+            }
+            taskMetadata = result;
+        }
+        return result;
+    }
+
+    private static String getServiceName(Task task) {
+        if (task.getGroup() != null) {
+            String[] groupParts = task.getGroup().split(":");
+            if (groupParts.length == 2 && "service".equals(groupParts[0])) {
+                return groupParts[1];
+            }
+        }
+
+        // The task group indicates that the task is not part of a service
+        return null;
+    }
+
     private AmazonECSAgentIntrospectionUtils.Container getAgentContainer(
             AmazonECSAgentIntrospectionUtils.Task agentTask, String shortContainerId)
             throws AmazonECSDiscoveryException {
@@ -131,7 +363,8 @@ public class AmazonECSDiscoveryUtils {
                 .withTasks(Collections.singletonList(taskArn));
 
         // We provided a single task ARN, so we expect a single Task
-        return amazonECS.describeTasks(request).getTasks().get(0);
+        return throttle.call(AmazonECSDiscoveryApi.DESCRIBE_TASKS,
+                () -> amazonECS.describeTasks(request)).getTasks().get(0);
     }
 
     private AmazonECSAgentIntrospectionUtils.Task getAgentTask(
@@ -144,8 +377,124 @@ public class AmazonECSDiscoveryUtils {
         throw new AmazonECSDiscoveryException("Task not found for short container ID: " + shortContainerId);
     }
 
-    private String getShortContainerId() throws UnknownHostException {
-        return InetAddress.getLocalHost().getHostName();
+    private String getShortContainerId() throws AmazonECSDiscoveryException {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new AmazonECSDiscoveryException("Unable to determine short container ID", e);
+        }
+    }
+
+    private static Optional<NetworkBinding> getNetworkBinding(SelfIdentity identity, int containerPort) {
+        for (NetworkBinding networkBinding : identity.getNetworkBindings()) {
+            if (networkBinding.getContainerPort() != null && networkBinding.getContainerPort() == containerPort) {
+                return Optional.of(networkBinding);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Lists a single task of this process's cluster/service, so that the ECS client has resolved its credentials and
+     * opened a connection before the first discovery. Failures are ignored; discovery reports them anyway.
+     */
+    private void warmUp(SelfIdentity identity) {
+        ListTasksRequest request = new ListTasksRequest()
+                .withCluster(identity.getClusterName())
+                .withServiceName(identity.getServiceName())
+                .withMaxResults(1);
+        try {
+            throttle.call(AmazonECSDiscoveryApi.LIST_TASKS, () -> amazonECS.listTasks(request));
+        } catch (Exception e) {
+            // Discovery will retry and report the failure
+        }
+    }
+
+    private static ScheduledFuture<?> completeOnTimeout(CompletableFuture<?> future,
+                                                        ScheduledExecutorService scheduler,
+                                                        long timeout,
+                                                        TimeUnit unit) {
+        return scheduler.schedule(() -> future.completeExceptionally(
+                new TimeoutException("ECS bootstrap did not complete within " + unit.toMillis(timeout) + " ms")),
+                timeout, unit);
+    }
+
+    private static <T> CompletableFuture<T> lookUpAsync(Lookup<T> lookup, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> lookUp(lookup), executor);
+    }
+
+    private static <T> T lookUp(Lookup<T> lookup) {
+        try {
+            return lookup.get();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * A lookup that may fail with a checked exception.
+     */
+    @FunctionalInterface
+    private interface Lookup<T> {
+        T get() throws Exception;
+    }
+
+    /**
+     * The ECS task and container this process is running in.
+     */
+    public static final class SelfIdentity {
+
+        private final String clusterName;
+        private final String taskArn;
+        private final String containerName;
+        private final String serviceName;
+        private final List<NetworkBinding> networkBindings;
+        private final String ipAddress;
+
+        SelfIdentity(String clusterName, String taskArn, String containerName, String serviceName,
+                     List<NetworkBinding> networkBindings, String ipAddress) {
+
+            this.clusterName = clusterName;
+            this.taskArn = taskArn;
+            this.containerName = containerName;
+            this.serviceName = serviceName;
+            this.networkBindings = networkBindings != null
+                    ? Collections.unmodifiableList(new ArrayList<>(networkBindings)) : Collections.emptyList();
+            this.ipAddress = ipAddress;
+        }
+
+        public String getClusterName() {
+            return clusterName;
+        }
+
+        public String getTaskArn() {
+            return taskArn;
+        }
+
+        public String getContainerName() {
+            return containerName;
+        }
+
+        /**
+         * @return the name of the ECS service the task belongs to, or null if it isn't part of a service
+         */
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public List<NetworkBinding> getNetworkBindings() {
+            return networkBindings;
+        }
+
+        /**
+         * @return the task's own private IP address if it has one (awsvpc network mode), otherwise null
+         */
+        public String getIpAddress() {
+            return ipAddress;
+        }
+
     }
 
 }
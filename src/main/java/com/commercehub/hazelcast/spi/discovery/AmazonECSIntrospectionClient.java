@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.SdkClientException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal HTTP client for the local, unauthenticated JSON endpoints exposed to ECS containers (the ECS Agent
+ * Introspection API and the ECS Task Metadata endpoint).<br>
+ *
+ * Each attempt is bounded by connect and read timeouts, and failed attempts are retried after a short exponential
+ * backoff. Since the ECS agent and the Task Metadata endpoint may still be starting when this process starts, refused
+ * connections are retried until a deadline even once all tries are used up. Response bodies are always consumed and
+ * closed, which lets {@link HttpURLConnection} reuse the underlying keep-alive connection for
+ * subsequent requests to the same endpoint, and JSON responses are parsed straight from the response stream.
+ */
+class AmazonECSIntrospectionClient {
+
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLISECONDS = 1000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLISECONDS = 2000;
+    private static final int DEFAULT_TRIES = 3;
+    private static final long DEFAULT_RETRY_BASE_DELAY_MILLISECONDS = 100;
+    private static final long MAX_RETRY_DELAY_MILLISECONDS = 1000;
+    private static final long DEFAULT_CONNECT_RETRY_DEADLINE_MILLISECONDS = 5000;
+
+    private static final Log log = LogFactory.getLog(AmazonECSIntrospectionClient.class);
+
+    private final ObjectMapper mapper;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final int tries;
+    private final long retryBaseDelayMillis;
+    private final long connectRetryDeadlineMillis;
+
+    AmazonECSIntrospectionClient(ObjectMapper mapper) {
+        this(mapper, DEFAULT_CONNECT_TIMEOUT_MILLISECONDS, DEFAULT_READ_TIMEOUT_MILLISECONDS, DEFAULT_TRIES,
+                DEFAULT_RETRY_BASE_DELAY_MILLISECONDS, DEFAULT_CONNECT_RETRY_DEADLINE_MILLISECONDS);
+    }
+
+    /**
+     * @param retryBaseDelayMillis delay before the first retry, doubled before each further retry
+     * @param connectRetryDeadlineMillis time since the first attempt during which refused connections are retried,
+     *                                   regardless of the number of tries
+     */
+    AmazonECSIntrospectionClient(ObjectMapper mapper,
+                                 int connectTimeoutMillis,
+                                 int readTimeoutMillis,
+                                 int tries,
+                                 long retryBaseDelayMillis,
+                                 long connectRetryDeadlineMillis) {
+        this.mapper = mapper;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.tries = tries;
+        this.retryBaseDelayMillis = retryBaseDelayMillis;
+        this.connectRetryDeadlineMillis = connectRetryDeadlineMillis;
+    }
+
+    /**
+     * Retrieves and parses a JSON resource.
+     *
+     * @return the parsed resource, or null if the endpoint responded with a non-200 status or an unparseable body
+     * @throws SdkClientException if the endpoint could not be reached within the configured number of tries (or, if
+     * the connection was refused, before the connect retry deadline)
+     */
+    <T> T get(String url, Class<T> type) {
+        ObjectReader reader = mapper.readerFor(type);
+        return request(url, tries, in -> reader.readValue(in));
+    }
+
+    /**
+     * Retrieves a resource as a string.
+     *
+     * @return the resource, or null if the endpoint responded with a non-200 status
+     * @throws SdkClientException if the endpoint could not be reached within the given number of tries (or, if the
+     * connection was refused, before the connect retry deadline)
+     */
+    String getString(String url, int tries) {
+        return request(url, tries, in -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        });
+    }
+
+    private <T> T request(String url, int tries, ResponseReader<T> responseReader) {
+        long connectRetryDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectRetryDeadlineMillis);
+        long retryDelayMillis = retryBaseDelayMillis;
+
+        for (int attempt = 1; ; attempt++) {
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) new URL(url).openConnection();
+                connection.setConnectTimeout(connectTimeoutMillis);
+                connection.setReadTimeout(readTimeoutMillis);
+                connection.setRequestProperty("Accept", "application/json");
+
+                int status = connection.getResponseCode();
+                if (status != HttpURLConnection.HTTP_OK) {
+                    log.warn("Unable to retrieve " + url + "; HTTP status: " + status);
+                    drain(connection.getErrorStream());
+                    return null;
+                }
+
+                try (InputStream in = connection.getInputStream()) {
+                    return responseReader.read(in);
+                }
+            } catch (JsonProcessingException e) {
+                log.warn("Unable to parse response from " + url + ": " + e.getMessage(), e);
+                return null;
+            } catch (IOException e) {
+                // Don't keep a half-read connection around for reuse
+                if (connection != null) {
+                    connection.disconnect();
+                }
+
+                // The endpoint may still be starting, in which case the connection is refused right away
+                boolean connectRetryDue = e instanceof ConnectException && System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(retryDelayMillis) - connectRetryDeadline < 0;
+                if (attempt >= tries && !connectRetryDue) {
+                    throw new SdkClientException("Unable to contact " + url, e);
+                }
+                try {
+                    TimeUnit.MILLISECONDS.sleep(retryDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new SdkClientException("Interrupted while retrying " + url, e);
+                }
+                retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLISECONDS);
+            }
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try (InputStream stream = in) {
+            byte[] buffer = new byte[1024];
+            while (stream.read(buffer) != -1) {
+                // discard, so that the connection can be reused
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+
+        T read(InputStream in) throws IOException;
+
+    }
+
+}
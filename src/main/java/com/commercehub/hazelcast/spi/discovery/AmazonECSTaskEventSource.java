@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.services.ecs.model.Task;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A source of ECS task state change events, which lets the {@link AmazonECSDiscoveryStrategy} apply membership
+ * changes as they happen instead of waiting for its next full discovery. See {@link AmazonSQSTaskEventSource} for
+ * events delivered to SQS by EventBridge, and {@link InMemoryTaskEventSource} for tests.
+ */
+public interface AmazonECSTaskEventSource extends Closeable {
+
+    /**
+     * Waits up to the given time for task state change events.
+     *
+     * @return the state of each task that changed, in the order the changes were received; empty if there were no
+     * changes within the given time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    List<Task> poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    @Override
+    default void close() {
+    }
+
+}
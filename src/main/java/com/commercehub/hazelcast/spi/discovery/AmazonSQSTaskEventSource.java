@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.services.ecs.model.Attachment;
+import com.amazonaws.services.ecs.model.Container;
+import com.amazonaws.services.ecs.model.KeyValuePair;
+import com.amazonaws.services.ecs.model.NetworkBinding;
+import com.amazonaws.services.ecs.model.NetworkInterface;
+import com.amazonaws.services.ecs.model.Task;
+import com.amazonaws.services.sns.AmazonSNS;
+import com.amazonaws.services.sns.AmazonSNSClientBuilder;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.amazonaws.services.sqs.model.CreateQueueRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link AmazonECSTaskEventSource} that receives "ECS Task State Change" events from an SQS queue, delivered either
+ * directly by an EventBridge (CloudWatch Events) rule or through an SNS topic. Messages are deleted as soon as they
+ * have been received; events lost that way are made up for by the strategy's periodic full discovery.<br>
+ *
+ * Since every message is received and deleted by a single consumer, each member needs a queue of its own: members
+ * sharing a queue would each only see some of the events. {@link #subscribe} creates such a queue and subscribes it to
+ * an SNS topic all events are published to.<br>
+ *
+ * Requires {@code com.amazonaws:aws-java-sdk-sqs} (and {@code com.amazonaws:aws-java-sdk-sns} to subscribe to a topic)
+ * on the classpath.
+ */
+public class AmazonSQSTaskEventSource implements AmazonECSTaskEventSource {
+
+    static final String TASK_STATE_CHANGE_DETAIL_TYPE = "ECS Task State Change";
+
+    private static final String ENI_EVENT_ATTACHMENT_TYPE = "eni";
+    private static final String ENI_ATTACHMENT_TYPE = "ElasticNetworkInterface";
+
+    private static final int MAX_NUMBER_OF_MESSAGES = 10;
+    private static final int MAX_WAIT_TIME_SECONDS = 20;
+
+    /** Prefix of the names of the queues created for members, which identifies queues left behind by crashes. */
+    static final String QUEUE_NAME_PREFIX = "hazelcast-ecs-discovery-";
+    /** How long undelivered events are kept; by then, a full discovery has long caught up with them. */
+    private static final String MESSAGE_RETENTION_PERIOD_SECONDS = "3600";
+
+    private static final Log log = LogFactory.getLog(AmazonSQSTaskEventSource.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AmazonSQS sqsClient;
+    private final String queueUrl;
+    private final AmazonSNS snsClient;
+    private final String subscriptionArn;
+    private final boolean shutdownClientsOnClose;
+
+    /**
+     * @param queueUrl the URL of a queue that no other member receives from
+     */
+    public AmazonSQSTaskEventSource(AmazonSQS sqsClient, String queueUrl) {
+        this(sqsClient, queueUrl, null, null, false);
+    }
+
+    private AmazonSQSTaskEventSource(AmazonSQS sqsClient,
+                                     String queueUrl,
+                                     AmazonSNS snsClient,
+                                     String subscriptionArn,
+                                     boolean shutdownClientsOnClose) {
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+        this.snsClient = snsClient;
+        this.subscriptionArn = subscriptionArn;
+        this.shutdownClientsOnClose = shutdownClientsOnClose;
+    }
+
+    /**
+     * Creates a queue for this member, allows the given SNS topic to send to it and subscribes it to the topic.
+     * The subscription and the queue are deleted when the event source is closed.
+     */
+    public static AmazonSQSTaskEventSource subscribe(AmazonSQS sqsClient, AmazonSNS snsClient, String topicArn) {
+        return subscribe(sqsClient, snsClient, topicArn, false);
+    }
+
+    /**
+     * @return an event source subscribed to the given topic like {@link #subscribe(AmazonSQS, AmazonSNS, String)},
+     * using SQS and SNS clients built from the default region and credentials provider chains
+     */
+    static AmazonECSTaskEventSource create(String topicArn) {
+        return subscribe(AmazonSQSClientBuilder.defaultClient(), AmazonSNSClientBuilder.defaultClient(), topicArn,
+                true);
+    }
+
+    private static AmazonSQSTaskEventSource subscribe(AmazonSQS sqsClient,
+                                                      AmazonSNS snsClient,
+                                                      String topicArn,
+                                                      boolean shutdownClientsOnClose) {
+        String queueUrl = sqsClient.createQueue(new CreateQueueRequest(QUEUE_NAME_PREFIX + UUID.randomUUID())
+                .addAttributesEntry(QueueAttributeName.MessageRetentionPeriod.toString(),
+                        MESSAGE_RETENTION_PERIOD_SECONDS)).getQueueUrl();
+        try {
+            String queueArn = sqsClient.getQueueAttributes(queueUrl,
+                    Collections.singletonList(QueueAttributeName.QueueArn.toString()))
+                    .getAttributes().get(QueueAttributeName.QueueArn.toString());
+            sqsClient.setQueueAttributes(queueUrl, Collections.singletonMap(
+                    QueueAttributeName.Policy.toString(), getTopicPolicy(queueArn, topicArn)));
+            String subscriptionArn = snsClient.subscribe(topicArn, "sqs", queueArn).getSubscriptionArn();
+            log.info("Receiving ECS task state change events from topic " + topicArn + " through queue " + queueUrl);
+            return new AmazonSQSTaskEventSource(sqsClient, queueUrl, snsClient, subscriptionArn,
+                    shutdownClientsOnClose);
+        } catch (RuntimeException e) {
+            sqsClient.deleteQueue(queueUrl);
+            throw e;
+        }
+    }
+
+    /**
+     * @return a queue policy that allows the topic to send messages to the queue
+     */
+    private static String getTopicPolicy(String queueArn, String topicArn) {
+        ObjectNode policy = objectMapper.createObjectNode().put("Version", "2012-10-17");
+        ObjectNode statement = policy.putArray("Statement").addObject()
+                .put("Effect", "Allow")
+                .put("Action", "sqs:SendMessage")
+                .put("Resource", queueArn);
+        statement.putObject("Principal").put("Service", "sns.amazonaws.com");
+        statement.putObject("Condition").putObject("ArnEquals").put("aws:SourceArn", topicArn);
+        return policy.toString();
+    }
+
+    @Override
+    public List<Task> poll(long timeout, TimeUnit unit) {
+        ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl)
+                .withMaxNumberOfMessages(MAX_NUMBER_OF_MESSAGES)
+                .withWaitTimeSeconds((int) Math.min(MAX_WAIT_TIME_SECONDS, unit.toSeconds(timeout)));
+        List<Message> messages = AmazonECSDiscoveryMetrics.record(AmazonECSDiscoveryApi.RECEIVE_TASK_EVENTS,
+                () -> sqsClient.receiveMessage(request)).getMessages();
+
+        List<Task> tasks = new ArrayList<>(messages.size());
+        List<DeleteMessageBatchRequestEntry> receivedMessages = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            Task task = parseTaskStateChange(message.getBody());
+            if (task != null) {
+                tasks.add(task);
+            } else {
+                log.debug("Ignoring message that isn't an ECS task state change: " + message.getMessageId());
+            }
+            receivedMessages.add(
+                    new DeleteMessageBatchRequestEntry(message.getMessageId(), message.getReceiptHandle()));
+        }
+
+        if (!receivedMessages.isEmpty()) {
+            sqsClient.deleteMessageBatch(queueUrl, receivedMessages);
+        }
+        return tasks;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (subscriptionArn != null) {
+                snsClient.unsubscribe(subscriptionArn);
+                sqsClient.deleteQueue(queueUrl);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete task state change event queue " + queueUrl, e);
+        } finally {
+            if (shutdownClientsOnClose) {
+                sqsClient.shutdown();
+                snsClient.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Parses an EventBridge "ECS Task State Change" event, optionally wrapped in an SNS notification, into the task
+     * fields needed for discovery.
+     *
+     * @return the task, or null if the message isn't a task state change event
+     */
+    static Task parseTaskStateChange(String message) {
+        JsonNode event;
+        try {
+            event = objectMapper.readTree(message);
+            if (event != null && event.has("Message") && "Notification".equals(getText(event, "Type"))) {
+                event = objectMapper.readTree(getText(event, "Message"));
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (event == null || !TASK_STATE_CHANGE_DETAIL_TYPE.equals(getText(event, "detail-type"))) {
+            return null;
+        }
+
+        JsonNode detail = event.path("detail");
+        Task task = new Task()
+                .withTaskArn(getText(detail, "taskArn"))
+                .withClusterArn(getText(detail, "clusterArn"))
+                .withTaskDefinitionArn(getText(detail, "taskDefinitionArn"))
+                .withContainerInstanceArn(getText(detail, "containerInstanceArn"))
+                .withGroup(getText(detail, "group"))
+                .withLastStatus(getText(detail, "lastStatus"))
+                .withDesiredStatus(getText(detail, "desiredStatus"))
+                .withHealthStatus(getText(detail, "healthStatus"))
+                .withVersion(getLong(detail, "version"));
+
+        List<Container> containers = new ArrayList<>();
+        for (JsonNode containerNode : detail.path("containers")) {
+            Container container = new Container()
+                    .withName(getText(containerNode, "name"))
+                    .withContainerArn(getText(containerNode, "containerArn"));
+
+            List<NetworkBinding> networkBindings = new ArrayList<>();
+            for (JsonNode networkBindingNode : containerNode.path("networkBindings")) {
+                Integer containerPort = getInteger(networkBindingNode, "containerPort");
+                Integer hostPort = getInteger(networkBindingNode, "hostPort");
+                if (containerPort != null && hostPort != null) {
+                    networkBindings.add(new NetworkBinding()
+                            .withContainerPort(containerPort)
+                            .withHostPort(hostPort)
+                            .withProtocol(getText(networkBindingNode, "protocol")));
+                }
+            }
+            container.setNetworkBindings(networkBindings);
+
+            List<NetworkInterface> networkInterfaces = new ArrayList<>();
+            for (JsonNode networkInterfaceNode : containerNode.path("networkInterfaces")) {
+                networkInterfaces.add(new NetworkInterface()
+                        .withPrivateIpv4Address(getText(networkInterfaceNode, "privateIpv4Address")));
+            }
+            container.setNetworkInterfaces(networkInterfaces);
+
+            containers.add(container);
+        }
+        task.setContainers(containers);
+
+        List<Attachment> attachments = new ArrayList<>();
+        for (JsonNode attachmentNode : detail.path("attachments")) {
+            List<KeyValuePair> details = new ArrayList<>();
+            for (JsonNode detailNode : attachmentNode.path("details")) {
+                details.add(new KeyValuePair()
+                        .withName(getText(detailNode, "name"))
+                        .withValue(getText(detailNode, "value")));
+            }
+            // Events name the attachment type "eni", where DescribeTasks says "ElasticNetworkInterface"
+            String type = getText(attachmentNode, "type");
+            attachments.add(new Attachment()
+                    .withType(ENI_EVENT_ATTACHMENT_TYPE.equals(type) ? ENI_ATTACHMENT_TYPE : type)
+                    .withDetails(details));
+        }
+        task.setAttachments(attachments);
+
+        return task.getTaskArn() != null ? task : null;
+    }
+
+    private static String getText(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value != null && !value.isNull() ? value.asText() : null;
+    }
+
+    private static Long getLong(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value != null && value.canConvertToLong() ? value.asLong() : null;
+    }
+
+    private static Integer getInteger(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value != null && value.canConvertToInt() ? value.asInt() : null;
+    }
+
+}
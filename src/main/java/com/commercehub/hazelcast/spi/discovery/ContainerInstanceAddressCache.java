@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, thread-safe cache of ECS container instance ARN to the ID and private IP address of the EC2 instance backing
+ * it. IP addresses expire after a fixed time-to-live; EC2 instance IDs never change for a container instance, so they
+ * don't expire, and an expired address can be resolved again from the EC2 instance alone. In both maps the least
+ * recently used entry is evicted once the cache is full.
+ */
+class ContainerInstanceAddressCache {
+
+    private final long ttlNanos;
+    private final int maxSize;
+    private final LongSupplier nanoClock;
+
+    private final LinkedHashMap<String, Entry> entries;
+    private final LinkedHashMap<String, String> ec2InstanceIds;
+
+    ContainerInstanceAddressCache(long ttl, TimeUnit ttlUnit, int maxSize) {
+        this(ttl, ttlUnit, maxSize, System::nanoTime);
+    }
+
+    ContainerInstanceAddressCache(long ttl, TimeUnit ttlUnit, int maxSize, LongSupplier nanoClock) {
+        this.ttlNanos = ttlUnit.toNanos(ttl);
+        this.maxSize = maxSize;
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ContainerInstanceAddressCache.this.maxSize;
+            }
+        };
+        this.ec2InstanceIds = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > ContainerInstanceAddressCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached private IP address of the given container instance, or null if absent or expired
+     */
+    synchronized String getIpAddress(String containerInstanceArn) {
+        Entry entry = entries.get(containerInstanceArn);
+        if (entry == null) {
+            return null;
+        }
+        if (nanoClock.getAsLong() - entry.createdNanos >= ttlNanos) {
+            entries.remove(containerInstanceArn);
+            return null;
+        }
+        return entry.ipAddress;
+    }
+
+    synchronized void put(String containerInstanceArn, String ipAddress) {
+        if (maxSize > 0 && ttlNanos > 0) {
+            entries.put(containerInstanceArn, new Entry(ipAddress, nanoClock.getAsLong()));
+        }
+    }
+
+    /**
+     * @return the EC2 instance ID of the given container instance, or null if it isn't known
+     */
+    synchronized String getEc2InstanceId(String containerInstanceArn) {
+        return ec2InstanceIds.get(containerInstanceArn);
+    }
+
+    synchronized void putEc2InstanceId(String containerInstanceArn, String ec2InstanceId) {
+        if (maxSize > 0) {
+            ec2InstanceIds.put(containerInstanceArn, ec2InstanceId);
+        }
+    }
+
+    /**
+     * Invalidates the address and EC2 instance ID of the given container instance.
+     */
+    synchronized void invalidate(String containerInstanceArn) {
+        entries.remove(containerInstanceArn);
+        ec2InstanceIds.remove(containerInstanceArn);
+    }
+
+    /**
+     * Invalidates all entries for container instances that are not in the given collection.
+     */
+    synchronized void retainAll(Collection<String> containerInstanceArns) {
+        Set<String> retained = containerInstanceArns instanceof Set
+                ? (Set<String>) containerInstanceArns : new HashSet<>(containerInstanceArns);
+        entries.keySet().retainAll(retained);
+        ec2InstanceIds.keySet().retainAll(retained);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+
+        private final String ipAddress;
+        private final long createdNanos;
+
+        private Entry(String ipAddress, long createdNanos) {
+            this.ipAddress = ipAddress;
+            this.createdNanos = createdNanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ECS task whose Hazelcast node(s) have been resolved.
+ */
+class DiscoveredTask {
+
+    private final String containerInstanceArn;
+    private final List<DiscoveryNode> nodes;
+    private final long describedNanos;
+
+    /**
+     * @param describedNanos the {@link System#nanoTime()} at which the task was described
+     */
+    DiscoveredTask(String containerInstanceArn, List<DiscoveryNode> nodes, long describedNanos) {
+        this.containerInstanceArn = containerInstanceArn;
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.describedNanos = describedNanos;
+    }
+
+    /**
+     * @return the ARN of the container instance hosting the task, or null if the task doesn't run on one
+     */
+    String getContainerInstanceArn() {
+        return containerInstanceArn;
+    }
+
+    List<DiscoveryNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the task was last described
+     */
+    long getDescribedNanos() {
+        return describedNanos;
+    }
+
+    /**
+     * @return this task, as described again at the given {@link System#nanoTime()}
+     */
+    DiscoveredTask describedAt(long describedNanos) {
+        return new DiscoveredTask(containerInstanceArn, nodes, describedNanos);
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable list of discovered nodes along with the time it was taken.
+ */
+class DiscoveryNodeSnapshot {
+
+    private final List<DiscoveryNode> nodes;
+    private final long timestampMillis;
+
+    DiscoveryNodeSnapshot(List<DiscoveryNode> nodes, long timestampMillis) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.timestampMillis = timestampMillis;
+    }
+
+    List<DiscoveryNode> getNodes() {
+        return nodes;
+    }
+
+    long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    long getAgeMillis() {
+        return System.currentTimeMillis() - timestampMillis;
+    }
+
+}
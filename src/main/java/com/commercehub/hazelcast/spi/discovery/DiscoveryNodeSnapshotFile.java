@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Persists discovered nodes to a small text file with one {@code host:port} line per node, so that a restarting
+ * member can start joining its cluster before discovery has completed. The file is replaced atomically, so readers
+ * never see a partially written snapshot.
+ */
+class DiscoveryNodeSnapshotFile {
+
+    private static final String HEADER = "# Hazelcast members discovered in ECS";
+
+    private final Path path;
+
+    DiscoveryNodeSnapshotFile(Path path) {
+        this.path = path;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the nodes in the snapshot file, or an empty list if there is no snapshot file
+     * @throws IOException if the snapshot file could not be read or is malformed
+     */
+    List<DiscoveryNode> read() throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        }
+
+        List<DiscoveryNode> nodes = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            nodes.add(parseNode(path, line));
+        }
+        return nodes;
+    }
+
+    /**
+     * Replaces the snapshot file with the given nodes. The nodes are written and synced to a temporary file in the
+     * same directory, which is then moved over the snapshot file.
+     */
+    void write(List<DiscoveryNode> nodes) throws IOException {
+        StringBuilder sb = new StringBuilder(HEADER.length() + 1 + nodes.size() * 22);
+        sb.append(HEADER).append('\n');
+        appendNodes(sb, nodes);
+        writeAtomically(path, sb.toString());
+    }
+
+    /**
+     * Parses a {@code host:port} line.
+     */
+    static DiscoveryNode parseNode(Path path, String line) throws IOException {
+        int separator = line.lastIndexOf(':');
+        if (separator <= 0 || separator == line.length() - 1) {
+            throw new IOException("Malformed node address in " + path + ": " + line);
+        }
+
+        try {
+            int port = Integer.parseInt(line.substring(separator + 1));
+            return new SimpleDiscoveryNode(new Address(line.substring(0, separator), port));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed node address in " + path + ": " + line, e);
+        }
+    }
+
+    /**
+     * Appends a {@code host:port} line per node.
+     */
+    static void appendNodes(StringBuilder sb, List<DiscoveryNode> nodes) {
+        for (DiscoveryNode node : nodes) {
+            Address address = node.getPrivateAddress();
+            sb.append(address.getHost()).append(':').append(address.getPort()).append('\n');
+        }
+    }
+
+    /**
+     * Replaces a file with the given content, which is written and synced to a temporary file in the same directory
+     * and then moved over the file.
+     */
+    static void writeAtomically(Path path, String content) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tempFile = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+
+            try {
+                Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+}
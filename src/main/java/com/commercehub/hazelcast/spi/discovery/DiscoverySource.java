@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.services.ecs.model.Task;
+import com.hazelcast.config.InvalidConfigurationException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An ECS cluster, optionally narrowed down to a service or task family, that nodes are discovered in, along with the
+ * tasks discovered in it so far.
+ */
+class DiscoverySource {
+
+    private static final String FAMILY_PREFIX = "family:";
+    private static final String SERVICE_GROUP_PREFIX = "service:";
+
+    private final String clusterName;
+    private final String serviceName;
+    private final String family;
+    private final Map<String, DiscoveredTask> discoveredTasks = new ConcurrentHashMap<>();
+
+    /**
+     * @param clusterName the cluster name or ARN, or null for the default cluster
+     * @param serviceName the service name, or null for all services
+     * @param family the task family, or null for all task families
+     */
+    DiscoverySource(String clusterName, String serviceName, String family) {
+        this.clusterName = clusterName;
+        this.serviceName = serviceName;
+        this.family = family;
+    }
+
+    String getClusterName() {
+        return clusterName;
+    }
+
+    String getServiceName() {
+        return serviceName;
+    }
+
+    String getFamily() {
+        return family;
+    }
+
+    /**
+     * @return the tasks discovered in this source by previous discoveries, keyed by task ARN
+     */
+    Map<String, DiscoveredTask> getDiscoveredTasks() {
+        return discoveredTasks;
+    }
+
+    /**
+     * @return true if the task belongs to this source, judging by its cluster ARN, group and task definition ARN
+     */
+    boolean matches(Task task) {
+        if (clusterName != null) {
+            String clusterArn = task.getClusterArn();
+            if (clusterArn == null || !(clusterArn.equals(clusterName) || clusterArn.endsWith("/" + clusterName))) {
+                return false;
+            }
+        }
+        if (serviceName != null && !(SERVICE_GROUP_PREFIX + serviceName).equals(task.getGroup())) {
+            return false;
+        }
+        return family == null || family.equals(getFamily(task.getTaskDefinitionArn()));
+    }
+
+    /**
+     * @return the family of a task definition ARN (arn:aws:ecs:region:account:task-definition/family:revision)
+     */
+    private static String getFamily(String taskDefinitionArn) {
+        if (taskDefinitionArn == null) {
+            return null;
+        }
+        int familyStart = taskDefinitionArn.lastIndexOf('/') + 1;
+        int revisionSeparator = taskDefinitionArn.lastIndexOf(':');
+        return revisionSeparator > familyStart
+                ? taskDefinitionArn.substring(familyStart, revisionSeparator)
+                : taskDefinitionArn.substring(familyStart);
+    }
+
+    /**
+     * Parses a comma-separated list of sources, each in the form {@code cluster}, {@code cluster/service} or
+     * {@code cluster/family:taskFamily}, where the cluster is a cluster name or ARN.
+     */
+    static List<DiscoverySource> parse(String sources) {
+        List<DiscoverySource> parsed = new ArrayList<>();
+        for (String source : sources.split(",")) {
+            source = source.trim();
+            if (source.isEmpty()) {
+                continue;
+            }
+
+            // Cluster ARNs contain a slash of their own (arn:aws:ecs:region:account:cluster/name)
+            int clusterNameStart = source.startsWith("arn:") ? source.indexOf('/') + 1 : 0;
+            int separator = source.indexOf('/', clusterNameStart);
+            String clusterName = separator < 0 ? source : source.substring(0, separator);
+            String qualifier = separator < 0 ? null : source.substring(separator + 1);
+            if (clusterName.isEmpty() || (qualifier != null && qualifier.isEmpty())) {
+                throw new InvalidConfigurationException("Malformed discovery source: " + source);
+            }
+
+            if (qualifier != null && qualifier.startsWith(FAMILY_PREFIX)) {
+                String family = qualifier.substring(FAMILY_PREFIX.length());
+                if (family.isEmpty()) {
+                    throw new InvalidConfigurationException("Malformed discovery source: " + source);
+                }
+                parsed.add(new DiscoverySource(clusterName, null, family));
+            } else {
+                parsed.add(new DiscoverySource(clusterName, qualifier, null));
+            }
+        }
+        return Collections.unmodifiableList(parsed);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(clusterName != null ? clusterName : "default");
+        if (serviceName != null) {
+            sb.append('/').append(serviceName);
+        } else if (family != null) {
+            sb.append('/').append(FAMILY_PREFIX).append(family);
+        }
+        return sb.toString();
+    }
+
+}
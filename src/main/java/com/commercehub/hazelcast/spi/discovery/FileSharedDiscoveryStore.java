@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link SharedDiscoveryStore} backed by a file on storage all members can reach, such as an EFS volume. The state
+ * is written in the same {@code host:port} format as the snapshot file, preceded by the owner and publication time.
+ * Updates are serialized with a lock on a sibling {@code .lock} file, and the file is replaced atomically, so readers
+ * never need to lock.
+ */
+public class FileSharedDiscoveryStore implements SharedDiscoveryStore {
+
+    private static final String HEADER = "# Hazelcast members discovered in ECS, shared by all members";
+    private static final String OWNER_PREFIX = "owner=";
+    private static final String PUBLISHED_AT_PREFIX = "published-at=";
+
+    /** File locks are held by the whole JVM, so threads of the same JVM are serialized on a monitor per file. */
+    private static final ConcurrentMap<Path, Object> monitors = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final Path lockPath;
+
+    public FileSharedDiscoveryStore(Path path) {
+        this.path = path.toAbsolutePath();
+        this.lockPath = this.path.resolveSibling(this.path.getFileName() + ".lock");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public SharedDiscoveryState read() throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        String ownerId = null;
+        long publishedAtMillis = -1;
+        List<DiscoveryNode> nodes = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (line.startsWith(OWNER_PREFIX)) {
+                ownerId = line.substring(OWNER_PREFIX.length());
+            } else if (line.startsWith(PUBLISHED_AT_PREFIX)) {
+                try {
+                    publishedAtMillis = Long.parseLong(line.substring(PUBLISHED_AT_PREFIX.length()));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed publication time in " + path + ": " + line, e);
+                }
+            } else {
+                nodes.add(DiscoveryNodeSnapshotFile.parseNode(path, line));
+            }
+        }
+
+        if (ownerId == null || publishedAtMillis < 0) {
+            throw new IOException("Missing owner or publication time in " + path);
+        }
+        return new SharedDiscoveryState(ownerId, publishedAtMillis, nodes);
+    }
+
+    @Override
+    public boolean compareAndSet(SharedDiscoveryState expected, SharedDiscoveryState updated) throws IOException {
+        synchronized (monitors.computeIfAbsent(path, key -> new Object())) {
+            Files.createDirectories(path.getParent());
+            try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                if (!SharedDiscoveryState.isSameVersion(read(), expected)) {
+                    return false;
+                }
+
+                StringBuilder sb = new StringBuilder(HEADER.length() + 64 + updated.getNodes().size() * 22);
+                sb.append(HEADER).append('\n');
+                sb.append(OWNER_PREFIX).append(updated.getOwnerId()).append('\n');
+                sb.append(PUBLISHED_AT_PREFIX).append(updated.getPublishedAtMillis()).append('\n');
+                DiscoveryNodeSnapshotFile.appendNodes(sb, updated.getNodes());
+                DiscoveryNodeSnapshotFile.writeAtomically(path, sb.toString());
+                return true;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commercehub.hazelcast.spi.discovery;
+
+/**
+ * A {@link SharedDiscoveryStore} kept in memory, shared by strategies running in the same JVM; mainly useful for
+ * testing.
+ */
+public class InMemorySharedDiscoveryStore implements SharedDiscoveryStore {
+
+    private SharedDiscoveryState state;
+
+    @Override
+    public synchronized SharedDiscoveryState read() {
+        return state;
+    }
+
+    @Override
+    public synchronized boolean compareAndSet(SharedDiscoveryState expected, SharedDiscoveryState updated) {
+        if (!SharedDiscoveryState.isSameVersion(state, expected)) {
+            return false;
+        }
+        state = updated;
+        return true;
+    }
+
+}
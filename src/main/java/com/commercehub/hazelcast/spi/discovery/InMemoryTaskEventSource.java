@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.services.ecs.model.Task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link AmazonECSTaskEventSource} whose events are published in-process, for testing event-driven discovery
+ * without SQS.
+ */
+public class InMemoryTaskEventSource implements AmazonECSTaskEventSource {
+
+    private final BlockingQueue<Task> events = new LinkedBlockingQueue<>();
+
+    /**
+     * Publishes the new state of a task.
+     */
+    public void publish(Task task) {
+        events.add(task);
+    }
+
+    @Override
+    public List<Task> poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Task first = events.poll(timeout, unit);
+        if (first == null) {
+            return Collections.emptyList();
+        }
+
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(first);
+        events.drainTo(tasks);
+        return tasks;
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import java.util.List;
+
+/**
+ * The nodes resolved from ECS/EC2 by a discovery, along with whether the discovery was complete, i.e. every page was
+ * listed and every call succeeded. Incomplete discoveries include the last known good nodes.
+ */
+class ResolvedNodes {
+
+    private final List<DiscoveryNode> nodes;
+    private final boolean complete;
+
+    ResolvedNodes(List<DiscoveryNode> nodes, boolean complete) {
+        this.nodes = nodes;
+        this.complete = complete;
+    }
+
+    List<DiscoveryNode> getNodes() {
+        return nodes;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Lets the members of a cluster take turns discovering nodes through a {@link SharedDiscoveryStore}. The member that
+ * last published the shared nodes leads discovery for as long as they are fresh: it queries ECS/EC2 and publishes the
+ * result, while the other members just read it. When the shared nodes are missing (e.g. while the first members
+ * join), stale (e.g. because the leading member left) or unreadable, members query ECS/EC2 themselves, and the first
+ * one to publish becomes the new leader. Only complete discoveries are published, so that a partial result (or one
+ * patched up with the last known good nodes) never replaces the nodes of all members; while the leader's discoveries
+ * are incomplete, the shared nodes go stale and the other members discover nodes themselves.
+ */
+class SharedDiscoveryCoordinator {
+
+    private final SharedDiscoveryStore store;
+    private final String memberId;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final ILogger logger;
+
+    SharedDiscoveryCoordinator(SharedDiscoveryStore store, String memberId, long ttlMillis, ILogger logger) {
+        this(store, memberId, ttlMillis, System::currentTimeMillis, logger);
+    }
+
+    SharedDiscoveryCoordinator(SharedDiscoveryStore store,
+                               String memberId,
+                               long ttlMillis,
+                               LongSupplier clock,
+                               ILogger logger) {
+        this.store = store;
+        this.memberId = memberId;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.logger = logger;
+    }
+
+    String getMemberId() {
+        return memberId;
+    }
+
+    /**
+     * @param resolver discovers the nodes from ECS/EC2
+     * @return the shared nodes if another member published them recently, otherwise the nodes from the resolver
+     */
+    List<DiscoveryNode> discover(Supplier<ResolvedNodes> resolver) {
+        SharedDiscoveryState state;
+        try {
+            state = store.read();
+        } catch (IOException e) {
+            logger.warning("Failed to read shared discovered nodes; discovering nodes from ECS", e);
+            return resolver.get().getNodes();
+        }
+
+        boolean fresh = state != null && clock.getAsLong() - state.getPublishedAtMillis() <= ttlMillis;
+        boolean leading = state != null && memberId.equals(state.getOwnerId());
+        if (fresh && !leading) {
+            logger.fine("Using nodes discovered by member " + state.getOwnerId());
+            return state.getNodes();
+        }
+
+        ResolvedNodes resolved = resolver.get();
+        List<DiscoveryNode> nodes = resolved.getNodes();
+        if (!resolved.isComplete()) {
+            logger.fine("Not publishing shared discovered nodes, since discovery was incomplete");
+            return nodes;
+        }
+
+        try {
+            if (store.compareAndSet(state, new SharedDiscoveryState(memberId, clock.getAsLong(), nodes))) {
+                if (!leading) {
+                    logger.info("Leading discovery for the members sharing discovered nodes");
+                }
+            } else {
+                // Another member published first and leads discovery from now on
+                logger.fine("Shared discovered nodes were published by another member");
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to publish shared discovered nodes", e);
+        }
+        return nodes;
+    }
+
+}
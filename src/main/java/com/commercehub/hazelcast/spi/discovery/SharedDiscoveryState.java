@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The nodes published to a {@link SharedDiscoveryStore}, along with the member that discovered them and when.
+ */
+public final class SharedDiscoveryState {
+
+    private final String ownerId;
+    private final long publishedAtMillis;
+    private final List<DiscoveryNode> nodes;
+
+    public SharedDiscoveryState(String ownerId, long publishedAtMillis, List<DiscoveryNode> nodes) {
+        this.ownerId = ownerId;
+        this.publishedAtMillis = publishedAtMillis;
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+    }
+
+    /**
+     * @return the ID of the member that published the nodes, and thereby leads discovery while they are fresh
+     */
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    public long getPublishedAtMillis() {
+        return publishedAtMillis;
+    }
+
+    public List<DiscoveryNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return true if both states are null, or were published by the same member at the same time
+     */
+    public static boolean isSameVersion(SharedDiscoveryState state, SharedDiscoveryState other) {
+        if (state == null || other == null) {
+            return state == other;
+        }
+        return state.publishedAtMillis == other.publishedAtMillis && Objects.equals(state.ownerId, other.ownerId);
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commercehub.hazelcast.spi.discovery;
+
+import java.io.IOException;
+
+/**
+ * Storage shared by the members of a cluster, through which the member currently leading discovery publishes the
+ * nodes it discovered, so that the other members don't have to query ECS/EC2 themselves.
+ *
+ * @see FileSharedDiscoveryStore
+ * @see InMemorySharedDiscoveryStore
+ */
+public interface SharedDiscoveryStore {
+
+    /**
+     * @return the most recently published state, or null if nothing has been published yet
+     */
+    SharedDiscoveryState read() throws IOException;
+
+    /**
+     * Atomically replaces the published state, if it is still the {@link SharedDiscoveryState#isSameVersion same
+     * version} as the expected state.
+     *
+     * @param expected the state previously read, or null if nothing had been published
+     * @return true if the state was replaced
+     */
+    boolean compareAndSet(SharedDiscoveryState expected, SharedDiscoveryState updated) throws IOException;
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.commercehub.hazelcast.spi.discovery
+
+import com.amazonaws.AmazonServiceException
+import com.amazonaws.SdkClientException
+import com.hazelcast.logging.ILogger
+import spock.lang.Specification
+
+class AmazonECSDiscoveryClientsSpec extends Specification {
+
+    def "newClientConfiguration() - tunes the pool, timeouts and compression for discovery"() {
+        when:
+        def clientConfiguration = AmazonECSDiscoveryClients.newClientConfiguration(8)
+
+        then:
+        clientConfiguration.maxConnections == 8 + AmazonECSDiscoveryClients.EXTRA_CONNECTIONS
+        clientConfiguration.connectionTimeout == AmazonECSDiscoveryClients.CONNECT_TIMEOUT_MILLIS
+        clientConfiguration.socketTimeout == AmazonECSDiscoveryClients.SOCKET_TIMEOUT_MILLIS
+        clientConfiguration.requestTimeout == AmazonECSDiscoveryClients.REQUEST_TIMEOUT_MILLIS
+        clientConfiguration.connectionTTL == AmazonECSDiscoveryClients.CONNECTION_TTL_MILLIS
+        clientConfiguration.useGzip()
+        clientConfiguration.retryPolicy.maxErrorRetry == AmazonECSDiscoveryClients.MAX_ERROR_RETRY
+    }
+
+    def "newRetryPolicy() - retries server and network errors, but leaves throttling to the discovery throttle"() {
+        given:
+        def retryCondition = AmazonECSDiscoveryClients.newRetryPolicy().retryCondition
+
+        expect:
+        retryCondition.shouldRetry(null, serviceException(500, "InternalFailure"), 0)
+        retryCondition.shouldRetry(null, new SdkClientException("Connection reset", new IOException()), 0)
+        !retryCondition.shouldRetry(null, serviceException(400, "ThrottlingException"), 0)
+        !retryCondition.shouldRetry(null, serviceException(400, "ClientException"), 0)
+    }
+
+    def "newDiscoveryStrategy() - strategies without clients share the tuned clients"() {
+        given:
+        System.setProperty("aws.region", "us-east-1")
+
+        when:
+        def first = (AmazonECSDiscoveryStrategy) new AmazonECSDiscoveryStrategyFactory()
+                .newDiscoveryStrategy(null, Mock(ILogger), [:])
+        def second = (AmazonECSDiscoveryStrategy) new AmazonECSDiscoveryStrategyFactory(5702)
+                .newDiscoveryStrategy(null, Mock(ILogger), [:])
+
+        then:
+        first.ecsClient.is(second.ecsClient)
+        first.ec2Client.is(second.ec2Client)
+        first.ecsClient.is(new AmazonECSDiscoveryUtils().amazonECS)
+
+        cleanup:
+        System.clearProperty("aws.region")
+    }
+
+    private static AmazonServiceException serviceException(int statusCode, String errorCode) {
+        def exception = new AmazonServiceException(errorCode)
+        exception.statusCode = statusCode
+        exception.errorCode = errorCode
+        return exception
+    }
+
+}
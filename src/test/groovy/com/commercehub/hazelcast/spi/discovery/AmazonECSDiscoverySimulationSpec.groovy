@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commercehub.hazelcast.spi.discovery
+
+import com.hazelcast.logging.ILogger
+import spock.lang.Specification
+
+/**
+ * End-to-end tests of discovery at scale against the simulated ECS/EC2 APIs and ECS agent endpoints.
+ */
+class AmazonECSDiscoverySimulationSpec extends Specification {
+
+    static final int HAZELCAST_PORT = 5701
+    static final int TASKS = 2000
+    static final int CONTAINER_INSTANCES = 50
+
+    def topology = new SimulatedTopology(TASKS, CONTAINER_INSTANCES, HAZELCAST_PORT)
+    def api = new SimulatedAwsApi(0, 0)
+    def ecsClient = new SimulatedAmazonECS(topology, api)
+    def ec2Client = new SimulatedAmazonEC2(topology, api)
+    AmazonECSDiscoveryStrategy strategy
+
+    def cleanup() {
+        strategy?.destroy()
+    }
+
+    def "discoverNodes() - discovers thousands of tasks with paginated listings and batched describes"() {
+        given:
+        strategy = newStrategy([:])
+
+        when:
+        def nodes = strategy.discoverNodes().toList()
+
+        then:
+        nodes.size() == TASKS
+        nodes*.privateAddress.toSet().size() == TASKS
+        api.getCalls("ListTasks") == TASKS / 100
+        api.getCalls("DescribeTasks") == TASKS / 100
+        api.getCalls("DescribeContainerInstances") == 1
+        api.getCalls("DescribeInstances") == 1
+    }
+
+    def "discoverNodes() - later discoveries only list tasks"() {
+        given:
+        strategy = newStrategy([:])
+        strategy.discoverNodes()
+        def calls = api.calls
+
+        when:
+        def nodes = strategy.discoverNodes().toList()
+
+        then:
+        nodes.size() == TASKS
+        api.calls - calls == TASKS / 100
+    }
+
+    def "discoverNodes(Consumer) - streams nodes while later pages are still being listed"() {
+        given:
+        strategy = newStrategy([:])
+        api.latencyMillis = 20
+        def streamed = []
+        def listTasksCallsAtFirstNode = -1
+
+        when:
+        def nodes = strategy.discoverNodes { node ->
+            if (streamed.empty) {
+                listTasksCallsAtFirstNode = api.getCalls("ListTasks")
+            }
+            streamed << node
+        }
+
+        then:
+        listTasksCallsAtFirstNode < TASKS / 100
+        streamed.size() == TASKS
+        streamed.toSet() == nodes.toSet()
+        api.getCalls("DescribeContainerInstances") == 1
+
+        when: "known tasks are streamed as they are listed"
+        streamed.clear()
+        def knownNodes = strategy.discoverNodes { streamed << it }
+
+        then:
+        streamed.size() == TASKS
+        streamed.toSet() == knownNodes.toSet()
+    }
+
+    def "discoverNodes() - picks up tasks started and stopped between discoveries"() {
+        given:
+        strategy = newStrategy([:])
+        strategy.discoverNodes()
+        def stoppedTaskArn = topology.taskArns.first()
+        def describeTasksCalls = api.getCalls("DescribeTasks")
+
+        when:
+        topology.stopTask(stoppedTaskArn)
+        def startedTaskArns = topology.startTasks(5)
+        def nodes = strategy.discoverNodes().toList()
+
+        then:
+        nodes.size() == TASKS + 4
+        // Only the started tasks are described, but they straddle two pages, each of which is described as it's listed
+        api.getCalls("DescribeTasks") - describeTasksCalls == 2
+        startedTaskArns.every { taskArn ->
+            nodes.any { it.privateAddress.host == topology.getHostIpAddress(taskArn) }
+        }
+    }
+
+    def "discoverNodes() - retries throttled calls"() {
+        given:
+        api.throttleEvery = 7
+        strategy = newStrategy([
+                (AmazonECSDiscoveryProperties.RETRY_BASE_DELAY_MILLIS.key()): 1,
+                (AmazonECSDiscoveryProperties.RETRY_MAX_DELAY_MILLIS.key()) : 5,
+                (AmazonECSDiscoveryProperties.RATE_LIMIT_PER_SECOND.key())  : 100000,
+                (AmazonECSDiscoveryProperties.RATE_LIMIT_BURST.key())       : 100000])
+
+        when:
+        def nodes = strategy.discoverNodes().toList()
+
+        then:
+        nodes.size() == TASKS
+        api.throttledCalls > 0
+    }
+
+    def "discoverNodes() - keeps the last known good nodes while ECS is failing"() {
+        given:
+        strategy = newStrategy([:])
+        strategy.discoverNodes()
+
+        when:
+        api.failEvery = 1
+        topology.stopTask(topology.taskArns.first())
+        def nodes = strategy.discoverNodes().toList()
+
+        then:
+        nodes.size() == TASKS
+        api.failedCalls > 0
+    }
+
+    def "start() - resolves the cluster and service from the task metadata endpoint"() {
+        given:
+        def taskMetadataEndpoint = new SimulatedTaskMetadataEndpoint(HAZELCAST_PORT)
+        strategy = new AmazonECSDiscoveryStrategy(Mock(ILogger), [:], ecsClient, ec2Client, HAZELCAST_PORT)
+
+        when:
+        strategy.start()
+        def nodes = strategy.discoverNodes().toList()
+
+        then:
+        nodes.size() == TASKS
+
+        cleanup:
+        taskMetadataEndpoint.close()
+    }
+
+    def "discoverServiceName() - resolves the service through the agent introspection API"() {
+        given:
+        def agentEndpoint = new SimulatedAgentIntrospectionEndpoint(topology)
+        def amazonECSDiscoveryUtils = new AmazonECSDiscoveryUtils(ecsClient)
+
+        when:
+        def serviceName = amazonECSDiscoveryUtils.discoverServiceName(SimulatedTopology.CLUSTER_NAME)
+
+        then:
+        serviceName == Optional.of(SimulatedTopology.SERVICE_NAME)
+        api.getCalls("DescribeTasks") == 1
+
+        cleanup:
+        agentEndpoint.close()
+    }
+
+    private AmazonECSDiscoveryStrategy newStrategy(Map<String, Comparable> properties) {
+        Map<String, Comparable> allProperties = [
+                (AmazonECSDiscoveryProperties.CLUSTER.key()): SimulatedTopology.CLUSTER_NAME,
+                (AmazonECSDiscoveryProperties.SERVICE.key()): SimulatedTopology.SERVICE_NAME] + properties
+        def strategy = new AmazonECSDiscoveryStrategy(Mock(ILogger), allProperties, ecsClient, ec2Client,
+                HAZELCAST_PORT)
+        strategy.start()
+        return strategy
+    }
+
+}
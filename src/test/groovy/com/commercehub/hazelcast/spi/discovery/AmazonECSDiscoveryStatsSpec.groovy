@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery
+
+import com.amazonaws.AmazonServiceException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.TimeUnit
+
+class AmazonECSDiscoveryStatsSpec extends Specification {
+
+    def stats = new AmazonECSDiscoveryStats()
+
+    def "onApiCall() - counts calls, errors and throttles per API"() {
+        given:
+        def throttled = new AmazonServiceException("Rate exceeded")
+        throttled.errorCode = "ThrottlingException"
+
+        when:
+        stats.onApiCall(AmazonECSDiscoveryApi.LIST_TASKS, TimeUnit.MILLISECONDS.toNanos(3), null)
+        stats.onApiCall(AmazonECSDiscoveryApi.LIST_TASKS, TimeUnit.MILLISECONDS.toNanos(5), throttled)
+        stats.onApiCall(AmazonECSDiscoveryApi.DESCRIBE_TASKS, 0, new RuntimeException())
+
+        then:
+        stats.apiCallCounts.LIST_TASKS == 2
+        stats.apiCallCounts.DESCRIBE_TASKS == 1
+        stats.apiCallCounts.DESCRIBE_INSTANCES == 0
+        stats.apiErrorCounts.LIST_TASKS == 1
+        stats.apiErrorCounts.DESCRIBE_TASKS == 1
+        stats.apiThrottleCounts.LIST_TASKS == 1
+        stats.apiThrottleCounts.DESCRIBE_TASKS == 0
+        stats.apiMeanLatencyMillis.LIST_TASKS == 4.0d
+        stats.apiLatencyHistograms.LIST_TASKS.startsWith("<=1ms:0 <=2ms:0 <=4ms:1 <=8ms:1 ")
+    }
+
+    @Unroll
+    def "bucket() - puts #millis ms in bucket #bucket"() {
+        expect:
+        AmazonECSDiscoveryStats.bucket(TimeUnit.MILLISECONDS.toNanos(millis)) == bucket
+
+        where:
+        millis  | bucket
+        0       | 0
+        1       | 0
+        2       | 1
+        3       | 2
+        1024    | 10
+        1025    | 11
+        8192    | 13
+        100_000 | 14
+    }
+
+    def "onDiscovery() - accumulates node churn"() {
+        when:
+        stats.onDiscovery(3, 3, 0, TimeUnit.MILLISECONDS.toNanos(20))
+        stats.onDiscovery(2, 1, 2, TimeUnit.MILLISECONDS.toNanos(10))
+        stats.onCacheLookup(true)
+        stats.onCacheLookup(false)
+        stats.onCacheLookup(true)
+
+        then:
+        stats.discoveries == 2
+        stats.lastNodesDiscovered == 2
+        stats.nodesAdded == 4
+        stats.nodesRemoved == 2
+        stats.lastDiscoveryDurationMillis == 10
+        stats.cacheHits == 2
+        stats.cacheMisses == 1
+        stats.lastSnapshotAgeMillis == -1
+    }
+
+}
@@ -18,10 +18,13 @@ package com.commercehub.hazelcast.spi.discovery
 
 import com.amazonaws.services.ec2.AmazonEC2Client
 import com.amazonaws.services.ecs.AmazonECSClient
+import com.hazelcast.config.properties.PropertyDefinition
 import com.hazelcast.logging.ILogger
 import com.hazelcast.spi.discovery.DiscoveryStrategy
 import spock.lang.Specification
 
+import java.lang.reflect.Modifier
+
 class AmazonECSDiscoveryStrategyFactorySpec extends Specification {
 
     AmazonECSDiscoveryStrategyFactory factory
@@ -39,9 +42,39 @@ class AmazonECSDiscoveryStrategyFactorySpec extends Specification {
         factory.getDiscoveryStrategyType() == AmazonECSDiscoveryStrategy
     }
 
-    def "getConfigurationProperties() returns empty properties"() {
+    def "getConfigurationProperties() returns all discovery properties"() {
+        given:
+        def declaredProperties = AmazonECSDiscoveryProperties.declaredFields
+                .findAll { it.type == PropertyDefinition && Modifier.isPublic(it.modifiers) }
+                .collect { it.get(null) }
+
         expect:
-        factory.getConfigurationProperties().isEmpty()
+        factory.getConfigurationProperties().size() == declaredProperties.size()
+        factory.getConfigurationProperties().containsAll(declaredProperties)
+        factory.getConfigurationProperties().every { it.optional() }
+        factory.getConfigurationProperties()*.key().unique().size() == declaredProperties.size()
+    }
+
+    def "newDiscoveryStrategy() - no-arg factory uses the default container port"() {
+        given:
+        factory = new AmazonECSDiscoveryStrategyFactory()
+        factory.ecsClient = mockECSClient
+        factory.ec2Client = mockEC2Client
+
+        when:
+        def strategy = (AmazonECSDiscoveryStrategy) factory.newDiscoveryStrategy(null, Mock(ILogger), [:])
+
+        then:
+        strategy.containerPort == 5701
+    }
+
+    def "newDiscoveryStrategy() - container port property overrides the constructor argument"() {
+        when:
+        def strategy = (AmazonECSDiscoveryStrategy) factory.newDiscoveryStrategy(null, Mock(ILogger),
+                [(AmazonECSDiscoveryProperties.CONTAINER_PORT.key()): 5702])
+
+        then:
+        strategy.containerPort == 5702
     }
 
     def "newDiscoveryStrategy() - happy path"() {
@@ -16,24 +16,38 @@
 
 package com.commercehub.hazelcast.spi.discovery
 
-import com.amazonaws.services.ec2.AmazonEC2
+import com.amazonaws.AmazonServiceException
 import com.amazonaws.services.ec2.AmazonEC2Client
 import com.amazonaws.services.ec2.model.DescribeInstancesResult
+import com.amazonaws.services.ec2.model.Filter
 import com.amazonaws.services.ec2.model.Instance
 import com.amazonaws.services.ec2.model.Reservation
-import com.amazonaws.services.ecs.AmazonECS
 import com.amazonaws.services.ecs.AmazonECSClient
+import com.amazonaws.services.ecs.model.Attachment
+import com.amazonaws.services.ecs.model.Attribute
 import com.amazonaws.services.ecs.model.Container
 import com.amazonaws.services.ecs.model.ContainerInstance
 import com.amazonaws.services.ecs.model.DescribeContainerInstancesResult
 import com.amazonaws.services.ecs.model.DescribeTasksResult
+import com.amazonaws.services.ecs.model.KeyValuePair
+import com.amazonaws.services.ecs.model.ListAttributesResult
+import com.amazonaws.services.ecs.model.ListContainerInstancesResult
 import com.amazonaws.services.ecs.model.ListTasksRequest
 import com.amazonaws.services.ecs.model.ListTasksResult
 import com.amazonaws.services.ecs.model.NetworkBinding
 import com.amazonaws.services.ecs.model.Task
+import com.hazelcast.config.InvalidConfigurationException
 import com.hazelcast.logging.ILogger
 import com.hazelcast.spi.discovery.DiscoveryNode
 import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.LongSupplier
 
 class AmazonECSDiscoveryStrategySpec extends Specification {
 
@@ -79,13 +93,23 @@ class AmazonECSDiscoveryStrategySpec extends Specification {
         mockEC2Client.describeInstances(_) >> describeInstancesResult
         describeInstancesResult.getReservations() >> [reservation]
 
-        task.getContainerInstanceArn() >> "arn" // todo: not needed?
+        task.getTaskArn() >> "arn"
+        task.getLastStatus() >> "RUNNING"
+        task.getContainerInstanceArn() >> "arn"
+        containerInstance.getContainerInstanceArn() >> "arn"
+        containerInstance.getStatus() >> "ACTIVE"
+        containerInstance.getEc2InstanceId() >> "i-0123456789"
+        instance.getInstanceId() >> "i-0123456789"
         task.getContainers() >> [container]
         container.getNetworkBindings() >> [networkBinding]
         networkBinding.getContainerPort() >> containerPort
         networkBinding.getHostPort() >> hostPort
         reservation.getInstances() >> [instance]
         instance.getPrivateIpAddress() >> instanceIpAddress
+
+        return [listTasksResult: listTasksResult,
+                describeTasksResult: describeTasksResult,
+                describeContainerInstancesResult: describeContainerInstancesResult]
     }
 
     def "discoverNodes() - happy path"() {
@@ -101,6 +125,608 @@ class AmazonECSDiscoveryStrategySpec extends Specification {
         nodes.asList().get(0).privateAddress.port == 56789
     }
 
+    def "discoverNodes() - only describes tasks that have not been seen before"() {
+        given:
+        def results = setupMocksForContainer("123.4.6.32", 56789)
+
+        when:
+        strategy.discoverNodes()
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.describeTasks(_) >> results.describeTasksResult
+        nodes.asList().size() == 1
+        nodes.asList().get(0).privateAddress.inetAddress.hostAddress == "123.4.6.32"
+    }
+
+    def "discoverNodes() - concurrent discoveries are serialized and describe each task once"() {
+        given:
+        def results = setupMocksForContainer("123.4.6.32", 56789)
+        def inFlight = new AtomicInteger()
+        def maxInFlight = new AtomicInteger()
+
+        when:
+        def threads = (1..2).collect { Thread.start { strategy.discoverNodes() } }
+        threads*.join()
+
+        then:
+        (1.._) * mockECSClient.listTasks(_) >> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math.&max)
+            Thread.sleep(50)
+            inFlight.decrementAndGet()
+            results.listTasksResult
+        }
+        1 * mockECSClient.describeTasks(_) >> results.describeTasksResult
+        maxInFlight.get() == 1
+    }
+
+    def "destroy() - fails a discovery waiting for describe calls that will never run"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.DISCOVERY_PARALLELISM.key()): 1,
+                 (AmazonECSDiscoveryProperties.BATCH_SIZE.key())           : 1],
+                mockECSClient, mockEC2Client, containerPort)
+        mockECSClient.listTasks(_) >> new ListTasksResult().withTaskArns("arn-1", "arn-2")
+        def describing = new CountDownLatch(1)
+        mockECSClient.describeTasks(_) >> {
+            describing.countDown()
+            new CountDownLatch(1).await()
+        }
+        def nodes = null
+        def discovery = Thread.start { nodes = strategy.discoverNodes() }
+        describing.await()
+
+        when: "the second describe batch is still queued"
+        strategy.destroy()
+        discovery.join(5000)
+
+        then:
+        !discovery.alive
+        nodes != null && nodes.isEmpty()
+    }
+
+    def "discoverNodes() - drops tasks that are no longer listed"() {
+        given:
+        setupMocksForContainer("123.4.6.32", 56789)
+        strategy.discoverNodes()
+
+        and: "the task has been replaced by a task that can't be resolved yet"
+        ListTasksResult listTasksResult = Mock(ListTasksResult)
+        listTasksResult.getTaskArns() >> ["other-arn"]
+
+        when:
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.listTasks(_) >> listTasksResult
+        1 * mockECSClient.describeTasks({ it.tasks == ["other-arn"] }) >> Mock(DescribeTasksResult)
+        nodes.asList().empty
+    }
+
+    def "discoverNodes() - includes the last known good nodes when discovery fails"() {
+        given:
+        setupMocksForContainer("123.4.6.32", 56789)
+        strategy.discoverNodes()
+
+        and: "the task has been replaced by a task that can't be described"
+        ListTasksResult listTasksResult = Mock(ListTasksResult)
+        listTasksResult.getTaskArns() >> ["other-arn"]
+
+        when:
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.listTasks(_) >> listTasksResult
+        1 * mockECSClient.describeTasks(_) >> { throw new AmazonServiceException("Service unavailable") }
+        nodes.asList().size() == 1
+        nodes.asList().get(0).privateAddress.inetAddress.hostAddress == "123.4.6.32"
+        strategy.lastKnownGoodNodes.size() == 1
+    }
+
+    def "discoverNodes() - writes the last known good nodes to the snapshot file"() {
+        given:
+        def snapshotFile = Files.createTempDirectory("hazelcast-ecs").resolve("nodes")
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.SNAPSHOT_FILE.key()): snapshotFile.toString()],
+                mockECSClient, mockEC2Client, containerPort)
+        setupMocksForContainer("123.4.6.32", 56789)
+
+        when:
+        strategy.discoverNodes()
+
+        then:
+        new DiscoveryNodeSnapshotFile(snapshotFile).read()*.privateAddress*.port == [56789]
+
+        cleanup:
+        Files.deleteIfExists(snapshotFile)
+    }
+
+    def "loadSnapshotFile() - seeds the background refresh snapshot from the snapshot file"() {
+        given:
+        def snapshotFile = Files.createTempFile("hazelcast-ecs", "nodes")
+        Files.write(snapshotFile, "10.0.0.1:5701\n10.0.0.2:5701\n".bytes)
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.SNAPSHOT_FILE.key()): snapshotFile.toString(),
+                 (AmazonECSDiscoveryProperties.BACKGROUND_REFRESH_INTERVAL_SECONDS.key()): 30],
+                mockECSClient, mockEC2Client, containerPort)
+        strategy.refresher = Mock(ScheduledExecutorService)
+
+        when:
+        strategy.loadSnapshotFile()
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
+
+        then:
+        0 * mockECSClient.listTasks(_)
+        nodes*.privateAddress*.host == ["10.0.0.1", "10.0.0.2"]
+        strategy.lastKnownGoodNodes.size() == 2
+
+        cleanup:
+        Files.deleteIfExists(snapshotFile)
+    }
+
+    def "discoverNodes() - background refresh mode returns the snapshot"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.BACKGROUND_REFRESH_INTERVAL_SECONDS.key()): 30],
+                mockECSClient, mockEC2Client, containerPort)
+        strategy.refresher = Mock(ScheduledExecutorService)
+        def results = setupMocksForContainer("123.4.6.32", 56789)
+        assert strategy.getSnapshotAgeMillis() == -1
+
+        when: "there is no snapshot yet"
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
+
+        then: "the snapshot is taken synchronously"
+        1 * mockECSClient.listTasks(_) >> results.listTasksResult
+        nodes.asList().size() == 1
+        strategy.getSnapshotAgeMillis() >= 0
+
+        when:
+        nodes = strategy.discoverNodes()
+
+        then: "the snapshot is returned without querying ECS"
+        0 * mockECSClient.listTasks(_)
+        nodes.asList().size() == 1
+    }
+
+    def "discoverNodes() - reports API calls and node churn to metrics listeners"() {
+        given:
+        setupMocksForContainer("123.4.6.32", 56789)
+        def listener = Mock(AmazonECSDiscoveryMetricsListener)
+        AmazonECSDiscoveryMetrics.addListener(listener)
+
+        when:
+        strategy.discoverNodes()
+
+        then:
+        1 * listener.onApiCall(AmazonECSDiscoveryApi.LIST_TASKS, _, null)
+        1 * listener.onApiCall(AmazonECSDiscoveryApi.DESCRIBE_TASKS, _, null)
+        1 * listener.onApiCall(AmazonECSDiscoveryApi.DESCRIBE_CONTAINER_INSTANCES, _, null)
+        1 * listener.onApiCall(AmazonECSDiscoveryApi.DESCRIBE_INSTANCES, _, null)
+        1 * listener.onCacheLookup(false)
+        1 * listener.onDiscovery(1, 1, 0, _)
+
+        cleanup:
+        AmazonECSDiscoveryMetrics.removeListener(listener)
+    }
+
+    def "getIpAddresses() - container instance addresses are cached between calls"() {
+        given:
+        def results = setupMocksForContainer("123.4.6.32", 56789)
+
+        when:
+        strategy.getIpAddresses(null, ["arn"])
+        def ipAddresses = strategy.getIpAddresses(null, ["arn"])
+
+        then:
+        1 * mockECSClient.describeContainerInstances(_) >> results.describeContainerInstancesResult
+        ipAddresses == ["arn": "123.4.6.32"]
+    }
+
+    def "discoverNodes() - awsvpc tasks are discovered from the task's network interface"() {
+        given:
+        ListTasksResult listTasksResult = Mock(ListTasksResult)
+        mockECSClient.listTasks(_) >> listTasksResult
+        listTasksResult.getTaskArns() >> ["arn"]
+
+        Task task = new Task()
+                .withTaskArn("arn")
+                .withLastStatus("RUNNING")
+                .withLaunchType("FARGATE")
+                .withAttachments(new Attachment()
+                        .withType("ElasticNetworkInterface")
+                        .withDetails(new KeyValuePair().withName("privateIPv4Address").withValue("10.0.2.106")))
+                .withContainers(new Container().withName("foo"))
+
+        mockECSClient.describeTasks(_) >> new DescribeTasksResult().withTasks(task)
+
+        when:
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
+
+        then:
+        0 * mockECSClient.describeContainerInstances(_)
+        0 * mockEC2Client.describeInstances(_)
+        nodes.asList().size() == 1
+        nodes.asList().get(0).privateAddress.inetAddress.hostAddress == "10.0.2.106"
+        nodes.asList().get(0).privateAddress.port == containerPort
+    }
+
+    def "discoverNodes() - awsvpc network mode doesn't resolve container instances"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.NETWORK_MODE.key()): "awsvpc"],
+                mockECSClient, mockEC2Client, containerPort)
+        setupMocksForContainer("123.4.6.32", 56789)
+
+        when:
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
+
+        then:
+        0 * mockECSClient.describeContainerInstances(_)
+        0 * mockEC2Client.describeInstances(_)
+        nodes.asList().empty
+    }
+
+    def "new AmazonECSDiscoveryStrategy() - self-discovery calls use the configured throttle"() {
+        when:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.RATE_LIMIT_PER_SECOND.key()): 2],
+                mockECSClient, mockEC2Client, containerPort)
+
+        then:
+        strategy.amazonECSDiscoveryUtils.throttle.is(strategy.throttle)
+    }
+
+    def "new AmazonECSDiscoveryStrategy() - unsupported network mode"() {
+        when:
+        new AmazonECSDiscoveryStrategy(logger, [(AmazonECSDiscoveryProperties.NETWORK_MODE.key()): "host"],
+                mockECSClient, mockEC2Client, containerPort)
+
+        then:
+        thrown(InvalidConfigurationException)
+    }
+
+    @Unroll
+    def "new AmazonECSDiscoveryStrategy() - #property.key() must be positive"() {
+        when:
+        new AmazonECSDiscoveryStrategy(logger, [(property.key()): 0], mockECSClient, mockEC2Client, containerPort)
+
+        then:
+        def e = thrown(InvalidConfigurationException)
+        e.message.contains(property.key())
+
+        where:
+        property << [AmazonECSDiscoveryProperties.RATE_LIMIT_PER_SECOND, AmazonECSDiscoveryProperties.RATE_LIMIT_BURST]
+    }
+
+    def "start() - cluster and service properties override discovery of the current task's cluster and service"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.CLUSTER.key()): "someCluster",
+                 (AmazonECSDiscoveryProperties.SERVICE.key()): "someService"],
+                mockECSClient, mockEC2Client, containerPort)
+
+        when:
+        strategy.start()
+        strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.listTasks({ it.cluster == "someCluster" && it.serviceName == "someService" })
+
+        cleanup:
+        strategy.destroy()
+    }
+
+    def "discoverNodes() - batch size property limits the page and batch size"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger, [(AmazonECSDiscoveryProperties.BATCH_SIZE.key()): 10],
+                mockECSClient, mockEC2Client, containerPort)
+        ListTasksResult listTasksResult = Mock(ListTasksResult)
+        listTasksResult.getTaskArns() >> (1..25).collect { "arn-$it".toString() }
+
+        when:
+        strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.listTasks({ it.maxResults == 10 }) >> listTasksResult
+        3 * mockECSClient.describeTasks({ it.tasks.size() <= 10 }) >> Mock(DescribeTasksResult)
+    }
+
+    def "discoverNodes() - merges and de-duplicates the nodes of all sources"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.SOURCES.key()): "blue/hazelcast, green/hazelcast, green/family:other"],
+                mockECSClient, mockEC2Client, containerPort)
+        def listener = Mock(AmazonECSDiscoveryMetricsListener)
+        AmazonECSDiscoveryMetrics.addListener(listener)
+
+        and: "the same task is found in two sources"
+        mockECSClient.listTasks({ it.family == "other" }) >> new ListTasksResult().withTaskArns("arn-2")
+        mockECSClient.listTasks(_) >> new ListTasksResult().withTaskArns("arn-1")
+        mockECSClient.describeTasks(_) >> { args ->
+            new DescribeTasksResult().withTasks(args[0].tasks.collect { awsvpcTask(it, "10.0.0.${it[-1]}") })
+        }
+
+        when:
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
+
+        then:
+        nodes*.privateAddress*.host as Set == ["10.0.0.1", "10.0.0.2"] as Set
+        nodes.size() == 2
+        1 * listener.onSourceDiscovery("blue/hazelcast", 1, _)
+        1 * listener.onSourceDiscovery("green/hazelcast", 1, _)
+        1 * listener.onSourceDiscovery("green/family:other", 1, _)
+
+        cleanup:
+        AmazonECSDiscoveryMetrics.removeListener(listener)
+        strategy.destroy()
+    }
+
+    def "discoverNodes() - only lists tasks that should be running"() {
+        when:
+        strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.listTasks({ it.desiredStatus == "RUNNING" })
+    }
+
+    def "discoverNodes() - doesn't filter listed tasks by desired status with the task filter disabled"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger, [(AmazonECSDiscoveryProperties.TASK_FILTER.key()): "none"],
+                mockECSClient, mockEC2Client, containerPort)
+
+        when:
+        strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.listTasks({ it.desiredStatus == null })
+    }
+
+    def "discoverNodes() - skips tasks that aren't running or are unhealthy, and describes them again next time"() {
+        given:
+        mockECSClient.listTasks(_) >> new ListTasksResult().withTaskArns("arn-1", "arn-2", "arn-3")
+
+        when:
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.describeTasks(_) >> new DescribeTasksResult().withTasks(
+                awsvpcTask("arn-1", "10.0.0.1").withHealthStatus("HEALTHY"),
+                awsvpcTask("arn-2", "10.0.0.2").withLastStatus("PENDING"),
+                awsvpcTask("arn-3", "10.0.0.3").withHealthStatus("UNHEALTHY"))
+        nodes*.privateAddress*.host == ["10.0.0.1"]
+
+        when:
+        strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.describeTasks({ it.tasks == ["arn-2", "arn-3"] }) >> new DescribeTasksResult()
+    }
+
+    def "discoverNodes() - periodically drops tasks that became unhealthy or whose host started draining"() {
+        given:
+        def bridgeTask = new Task()
+                .withTaskArn("arn-2")
+                .withLastStatus("RUNNING")
+                .withContainerInstanceArn("ci-1")
+                .withContainers(new Container().withNetworkBindings(
+                        new NetworkBinding().withContainerPort(containerPort).withHostPort(32768)))
+        def tasks = ["arn-1": awsvpcTask("arn-1", "10.0.0.1"), "arn-2": bridgeTask,
+                     "arn-3": awsvpcTask("arn-3", "10.0.0.3")]
+        def hostStatus = "ACTIVE"
+        mockECSClient.listTasks(_) >> new ListTasksResult().withTaskArns("arn-1", "arn-2", "arn-3")
+        mockECSClient.describeTasks(_) >> { args ->
+            new DescribeTasksResult().withTasks(args[0].tasks.collect { tasks[it] })
+        }
+        mockECSClient.describeContainerInstances(_) >> {
+            new DescribeContainerInstancesResult().withContainerInstances(new ContainerInstance()
+                    .withContainerInstanceArn("ci-1").withEc2InstanceId("i-1").withStatus(hostStatus))
+        }
+        mockEC2Client.describeInstances(_) >> new DescribeInstancesResult().withReservations(
+                new Reservation().withInstances(new Instance().withInstanceId("i-1").withPrivateIpAddress("10.0.1.1")))
+
+        expect:
+        strategy.discoverNodes()*.privateAddress*.host as Set == ["10.0.0.1", "10.0.1.1", "10.0.0.3"] as Set
+
+        when: "a task became unhealthy and a host started draining, and revalidation is due"
+        tasks["arn-1"].healthStatus = "UNHEALTHY"
+        hostStatus = "DRAINING"
+        strategy.nanoClock = { System.nanoTime() + TimeUnit.MINUTES.toNanos(10) } as LongSupplier
+
+        then:
+        strategy.discoverNodes()*.privateAddress*.host == ["10.0.0.3"]
+    }
+
+    def "discoverNodes() - only revalidates tasks described longer ago than the revalidation interval"() {
+        given:
+        long now = System.nanoTime()
+        strategy.nanoClock = { now } as LongSupplier
+        def listed = ["arn-1"]
+        mockECSClient.listTasks(_) >> { new ListTasksResult().withTaskArns(listed) }
+        mockECSClient.describeTasks(_) >> { args ->
+            new DescribeTasksResult().withTasks(args[0].tasks.collect { awsvpcTask(it, "10.0.0.${it[-1]}") })
+        }
+        strategy.discoverNodes()
+        now += TimeUnit.MINUTES.toNanos(3)
+        listed << "arn-2"
+        strategy.discoverNodes()
+
+        when: "only the first task was described more than five minutes ago"
+        now += TimeUnit.MINUTES.toNanos(3)
+        strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.describeTasks({ it.tasks == ["arn-1"] }) >>
+                new DescribeTasksResult().withTasks(awsvpcTask("arn-1", "10.0.0.1"))
+
+        when: "it was just described again"
+        strategy.discoverNodes()
+
+        then:
+        0 * mockECSClient.describeTasks(_)
+    }
+
+    @Unroll
+    def "discoverNodes() - #taskFilter task filter"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.TASK_FILTER.key()): taskFilter],
+                mockECSClient, mockEC2Client, containerPort)
+        mockECSClient.listTasks(_) >> new ListTasksResult().withTaskArns("arn-1", "arn-2", "arn-3")
+        mockECSClient.describeTasks(_) >> new DescribeTasksResult().withTasks(
+                awsvpcTask("arn-1", "10.0.0.1").withHealthStatus("HEALTHY"),
+                awsvpcTask("arn-2", "10.0.0.2").withLastStatus("PENDING"),
+                awsvpcTask("arn-3", "10.0.0.3").withHealthStatus("UNKNOWN"))
+
+        expect:
+        strategy.discoverNodes()*.privateAddress*.host == hosts
+
+        where:
+        taskFilter | hosts
+        "none"     | ["10.0.0.1", "10.0.0.2", "10.0.0.3"]
+        "running"  | ["10.0.0.1", "10.0.0.3"]
+        "healthy"  | ["10.0.0.1"]
+    }
+
+    def "getIpAddresses() - skips draining container instances"() {
+        given:
+        def containerInstance = new ContainerInstance()
+                .withContainerInstanceArn("arn")
+                .withEc2InstanceId("i-0123456789")
+                .withStatus("DRAINING")
+
+        when:
+        def ipAddresses = strategy.getIpAddresses(null, ["arn"])
+
+        then:
+        1 * mockECSClient.describeContainerInstances(_) >>
+                new DescribeContainerInstancesResult().withContainerInstances(containerInstance)
+        0 * mockEC2Client.describeInstances(_)
+        ipAddresses.isEmpty()
+    }
+
+    def "getIpAddresses() - only describes the EC2 instance of a container instance whose address expired"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.CONTAINER_INSTANCE_CACHE_TTL_SECONDS.key()): 0],
+                mockECSClient, mockEC2Client, containerPort)
+        def containerInstance = new ContainerInstance()
+                .withContainerInstanceArn("arn")
+                .withEc2InstanceId("i-0123456789")
+                .withStatus("ACTIVE")
+        def instance = new Instance().withInstanceId("i-0123456789").withPrivateIpAddress("10.0.0.1")
+
+        when:
+        def ipAddresses = strategy.getIpAddresses(null, ["arn"])
+
+        then:
+        1 * mockECSClient.describeContainerInstances(_) >>
+                new DescribeContainerInstancesResult().withContainerInstances(containerInstance)
+        1 * mockEC2Client.describeInstances(_) >>
+                new DescribeInstancesResult().withReservations(new Reservation().withInstances(instance))
+        ipAddresses == ["arn": "10.0.0.1"]
+
+        when: "the address expires from the cache"
+        ipAddresses = strategy.getIpAddresses(null, ["arn"])
+
+        then:
+        0 * mockECSClient.describeContainerInstances(_)
+        1 * mockEC2Client.describeInstances({ it.instanceIds == ["i-0123456789"] }) >>
+                new DescribeInstancesResult().withReservations(new Reservation().withInstances(instance))
+        ipAddresses == ["arn": "10.0.0.1"]
+    }
+
+    def "getIpAddresses() - tag host resolution describes all tagged hosts at once"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger, [
+                (AmazonECSDiscoveryProperties.HOST_RESOLUTION.key()): "tag",
+                (AmazonECSDiscoveryProperties.HOST_TAG.key()): "cluster=prod",
+                (AmazonECSDiscoveryProperties.CONTAINER_INSTANCE_CACHE_TTL_SECONDS.key()): 0],
+                mockECSClient, mockEC2Client, containerPort)
+        def containerInstances = (1..3).collect {
+            new ContainerInstance().withContainerInstanceArn("arn-$it").withEc2InstanceId("i-$it").withStatus("ACTIVE")
+        }
+        def instances = (1..3).collect { new Instance().withInstanceId("i-$it").withPrivateIpAddress("10.0.0.$it") }
+
+        when:
+        def ipAddresses = strategy.getIpAddresses(null, ["arn-1", "arn-2"])
+
+        then:
+        1 * mockECSClient.describeContainerInstances({ it.containerInstances == ["arn-1", "arn-2"] }) >>
+                new DescribeContainerInstancesResult().withContainerInstances(containerInstances[0..1])
+        1 * mockEC2Client.describeInstances({ it.filters.contains(new Filter("tag:cluster", ["prod"])) }) >>
+                new DescribeInstancesResult().withReservations(new Reservation().withInstances(instances))
+        ipAddresses == ["arn-1": "10.0.0.1", "arn-2": "10.0.0.2"]
+
+        when: "the host addresses expire from the cache, and a new host joins"
+        ipAddresses = strategy.getIpAddresses(null, ["arn-1", "arn-2", "arn-3"])
+
+        then: "only the new host is described"
+        1 * mockECSClient.describeContainerInstances({ it.containerInstances == ["arn-3"] }) >>
+                new DescribeContainerInstancesResult().withContainerInstances(containerInstances[2])
+        1 * mockEC2Client.describeInstances(_) >>
+                new DescribeInstancesResult().withReservations(new Reservation().withInstances(instances))
+        ipAddresses == ["arn-1": "10.0.0.1", "arn-2": "10.0.0.2", "arn-3": "10.0.0.3"]
+    }
+
+    def "getIpAddresses() - attribute host resolution lists the address attributes of all hosts at once"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.HOST_RESOLUTION.key()): "attribute"],
+                mockECSClient, mockEC2Client, containerPort)
+        def arn = "arn:aws:ecs:us-east-1:123456789012:container-instance/prod/"
+
+        when:
+        def ipAddresses = strategy.getIpAddresses("prod", [arn + "1", arn + "2"])
+
+        then:
+        1 * mockECSClient.listAttributes({ it.attributeName == "private-ip-address" && it.nextToken == null }) >>
+                new ListAttributesResult().withNextToken("page-2").withAttributes(
+                        new Attribute().withTargetId(arn + "1").withValue("10.0.0.1"))
+        1 * mockECSClient.listAttributes({ it.nextToken == "page-2" }) >> new ListAttributesResult().withAttributes(
+                new Attribute().withTargetId("2").withValue("10.0.0.2"))
+        1 * mockECSClient.listContainerInstances({ it.status == "ACTIVE" }) >>
+                new ListContainerInstancesResult().withContainerInstanceArns(arn + "1", arn + "2")
+        0 * mockECSClient.describeContainerInstances(_)
+        0 * mockEC2Client.describeInstances(_)
+        ipAddresses == [(arn + "1"): "10.0.0.1", (arn + "2"): "10.0.0.2"]
+    }
+
+    @Unroll
+    def "getIpAddresses() - attribute host resolution skips inactive hosts with the #taskFilter task filter"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger, [
+                (AmazonECSDiscoveryProperties.HOST_RESOLUTION.key()): "attribute",
+                (AmazonECSDiscoveryProperties.TASK_FILTER.key()): taskFilter],
+                mockECSClient, mockEC2Client, containerPort)
+        def arn = "arn:aws:ecs:us-east-1:123456789012:container-instance/prod/"
+        mockECSClient.listAttributes(_) >> new ListAttributesResult().withAttributes(
+                new Attribute().withTargetId(arn + "1").withValue("10.0.0.1"),
+                new Attribute().withTargetId(arn + "2").withValue("10.0.0.2"))
+
+        when:
+        def ipAddresses = strategy.getIpAddresses("prod", [arn + "1", arn + "2"])
+
+        then:
+        listCalls * mockECSClient.listContainerInstances({ it.cluster == "prod" && it.status == "ACTIVE" }) >>
+                new ListContainerInstancesResult().withContainerInstanceArns(arn + "1")
+        ipAddresses.keySet() == hosts.collect { arn + it } as Set
+
+        where:
+        taskFilter | listCalls | hosts
+        "running"  | 1         | ["1"]
+        "none"     | 0         | ["1", "2"]
+    }
+
+    def "new AmazonECSDiscoveryStrategy() - tag host resolution requires a host tag"() {
+        when:
+        new AmazonECSDiscoveryStrategy(logger, [(AmazonECSDiscoveryProperties.HOST_RESOLUTION.key()): "tag"],
+                mockECSClient, mockEC2Client, containerPort)
+
+        then:
+        thrown(InvalidConfigurationException)
+    }
+
     def "discoverNodes() - no nodes doesn't explode"() {
         given:
         mockECSClient.describeTasks(_) >> Mock(DescribeTasksResult)
@@ -128,32 +754,63 @@ class AmazonECSDiscoveryStrategySpec extends Specification {
         node == null
     }
 
-    def "getIpAddress() - null container instance"() {
+    def "getDiscoveryNode() - reuses the node of an unchanged endpoint"() {
+        given:
+        setupMocksForContainer("123.4.6.32", 56789)
+        def discovered = strategy.discoverNodes().first()
+
         when:
-        def ipAddress = strategy.getIpAddress(null)
+        def node = strategy.getDiscoveryNode("123.4.6.32", 56789)
 
         then:
-        noExceptionThrown()
-        ipAddress == null
+        node.is(discovered)
     }
 
-    def "getIpAddress() - no ec2 instances doesn't explode"() {
+    def "discoverNodes() - doesn't build fine log messages while fine logging is disabled"() {
         given:
-        strategy = GroovySpy(AmazonECSDiscoveryStrategy,
-                constructorArgs: [Mock(ILogger), Mock(Map), Mock(AmazonECS), Mock(AmazonEC2), 0])
+        setupMocksForContainer("123.4.6.32", 56789)
+        logger.isFineEnabled() >> false
+
+        when:
+        strategy.discoverNodes()
+
+        then:
+        0 * logger.fine(_)
+    }
 
-        and: "no ec2 instance"
-        strategy.getEc2Instance(_) >> null
+    def "getIpAddress() - null container instance"() {
+        when:
+        def ipAddress = strategy.getIpAddress(null, null)
+
+        then:
+        noExceptionThrown()
+        ipAddress == null
+    }
 
+    def "getIpAddress() - no ec2 instance doesn't explode"() {
         when:
-        def ipAddress = strategy.getIpAddress(Mock(ContainerInstance))
+        def ipAddress = strategy.getIpAddress(Mock(ContainerInstance), null)
 
         then:
         noExceptionThrown()
         ipAddress == null
     }
 
-    def "getTasks() - no tasks returns empty stream"() {
+    def "getIpAddresses() - describes container instance batches concurrently"() {
+        given:
+        def containerInstanceArns = (1..250).collect { "arn-" + it }
+
+        when:
+        strategy.getIpAddresses(null, containerInstanceArns)
+
+        then:
+        2 * mockECSClient.describeContainerInstances({ it.containerInstances.size() == 100 }) >>
+                Mock(DescribeContainerInstancesResult)
+        1 * mockECSClient.describeContainerInstances({ it.containerInstances.size() == 50 }) >>
+                Mock(DescribeContainerInstancesResult)
+    }
+
+    def "discoverNodes() - no task details returns no nodes"() {
         given:
         ListTasksResult listTasksResult = Mock(ListTasksResult)
         mockECSClient.listTasks(_) >> listTasksResult
@@ -164,37 +821,118 @@ class AmazonECSDiscoveryStrategySpec extends Specification {
         describeTasksResult.getTasks() >> []
 
         when:
-        def tasksStream = strategy.getTasks()
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
 
         then:
         noExceptionThrown()
-        tasksStream.count() == 0
+        nodes.isEmpty()
+        1 * logger.warning("No ECS task details found")
     }
 
-    def "getTaskArns() - non-null service name"() {
+    def "discoverNodes() - lists the tasks of the configured service"() {
         given:
-        strategy.serviceName = "someServiceName"
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.SOURCES.key()): "someCluster/someServiceName"],
+                mockECSClient, mockEC2Client, containerPort)
 
         when:
-        strategy.getTaskArns()
+        strategy.discoverNodes()
 
         then:
         1 * mockECSClient.listTasks(_ as ListTasksRequest) >> { ListTasksRequest req ->
+            assert req.cluster == "someCluster"
             assert req.serviceName == "someServiceName"
             return Mock(ListTasksResult)
         }
+
+        cleanup:
+        strategy.destroy()
     }
 
-    def "getEc2Instance() - null container instance"() {
+    def "discoverNodes() - lists the tasks of the configured task family"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.SOURCES.key()): "someCluster/family:someFamily"],
+                mockECSClient, mockEC2Client, containerPort)
+
         when:
-        def instance = strategy.getEc2Instance(null)
+        strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.listTasks({ it.cluster == "someCluster" && it.family == "someFamily" && !it.serviceName })
+
+        cleanup:
+        strategy.destroy()
+    }
+
+    def "discoverNodes() - follows nextToken across pages"() {
+        given:
+        mockECSClient.describeTasks(_) >> { args ->
+            new DescribeTasksResult().withTasks(args[0].tasks.collect { awsvpcTask(it, "10.0.0.${it[-1]}") })
+        }
+
+        when:
+        Iterable<DiscoveryNode> nodes = strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.listTasks({ it.nextToken == null }) >>
+                new ListTasksResult().withTaskArns("arn-1", "arn-2").withNextToken("token")
+        1 * mockECSClient.listTasks({ it.nextToken == "token" }) >> new ListTasksResult().withTaskArns("arn-3")
+        nodes*.privateAddress*.host as Set == ["10.0.0.1", "10.0.0.2", "10.0.0.3"] as Set
+    }
+
+    def "discoverNodes() - describes tasks in batches of 100"() {
+        given:
+        ListTasksResult firstPage = Mock(ListTasksResult)
+        firstPage.getTaskArns() >> (1..100).collect { "arn-" + it }
+        firstPage.getNextToken() >> "token"
+
+        ListTasksResult secondPage = Mock(ListTasksResult)
+        secondPage.getTaskArns() >> (101..150).collect { "arn-" + it }
+
+        mockECSClient.listTasks({ it.nextToken == null }) >> firstPage
+        mockECSClient.listTasks({ it.nextToken == "token" }) >> secondPage
+
+        when:
+        strategy.discoverNodes()
+
+        then:
+        1 * mockECSClient.describeTasks({ it.tasks.size() == 100 }) >> Mock(DescribeTasksResult)
+        1 * mockECSClient.describeTasks({ it.tasks.size() == 50 }) >> Mock(DescribeTasksResult)
+    }
+
+    def "discoverNodes(Consumer) - doesn't describe known tasks, but still passes on their nodes"() {
+        given:
+        mockECSClient.listTasks(_) >>> [new ListTasksResult().withTaskArns("arn-1"),
+                                        new ListTasksResult().withTaskArns("arn-1", "arn-2")]
+        mockECSClient.describeTasks({ it.tasks == ["arn-1"] }) >>
+                new DescribeTasksResult().withTasks(awsvpcTask("arn-1", "10.0.0.1"))
+        strategy.discoverNodes()
+        def streamed = []
+
+        when:
+        def nodes = strategy.discoverNodes { streamed << it }
+
+        then:
+        1 * mockECSClient.describeTasks({ it.tasks == ["arn-2"] }) >>
+                new DescribeTasksResult().withTasks(awsvpcTask("arn-2", "10.0.0.2"))
+        0 * mockECSClient.describeTasks(_)
+        nodes*.privateAddress*.host as Set == ["10.0.0.1", "10.0.0.2"] as Set
+        streamed as Set == nodes as Set
+        streamed.size() == 2
+    }
+
+    def "getEc2Instances() - no container instances makes no calls"() {
+        when:
+        def instances = strategy.getEc2Instances([])
 
         then:
         noExceptionThrown()
-        instance == null
+        instances.isEmpty()
+        0 * mockEC2Client.describeInstances(_)
     }
 
-    def "getEc2Instance() - no instances doesn't explode"() {
+    def "getEc2Instances() - no instances doesn't explode"() {
         given:
         def describeInstancesResult = Mock(DescribeInstancesResult)
         mockEC2Client.describeInstances(_) >> describeInstancesResult
@@ -202,35 +940,192 @@ class AmazonECSDiscoveryStrategySpec extends Specification {
         describeInstancesResult.getReservations() >> [reservation]
         reservation.getInstances() >> []
 
+        and:
+        def containerInstance = Mock(ContainerInstance)
+        containerInstance.getEc2InstanceId() >> "i-0123456789"
+
         when:
-        def instance = strategy.getEc2Instance(Mock(ContainerInstance))
+        def instances = strategy.getEc2Instances([containerInstance])
 
         then:
         noExceptionThrown()
-        instance == null
+        instances.isEmpty()
     }
 
-    def "getContainerInstance() - null task"() {
+    def "getContainerInstances() - no container instance ARNs makes no calls"() {
         when:
-        def instance = strategy.getContainerInstance(null)
+        def instances = strategy.getContainerInstances(null, [])
 
         then:
         noExceptionThrown()
-        instance == null
+        instances.isEmpty()
+        0 * mockECSClient.describeContainerInstances(_)
     }
 
-    def "getContainerInstance() - no instances"() {
+    def "getContainerInstances() - no instances"() {
         given:
         DescribeContainerInstancesResult describeContainerInstancesResult = Mock(DescribeContainerInstancesResult)
         mockECSClient.describeContainerInstances(_) >> describeContainerInstancesResult
         describeContainerInstancesResult.getContainerInstances() >> []
 
         when:
-        def instance = strategy.getContainerInstance(Mock(Task))
+        def instances = strategy.getContainerInstances(null, ["arn"])
 
         then:
         noExceptionThrown()
-        instance == null
+        instances.isEmpty()
+    }
+
+    def "getContainerInstances() - resolves container instances in batches of 100"() {
+        given:
+        def containerInstanceArns = (1..150).collect { "arn-" + it }
+
+        when:
+        strategy.getContainerInstances(null, containerInstanceArns)
+
+        then:
+        1 * mockECSClient.describeContainerInstances({ it.containerInstances.size() == 100 }) >>
+                Mock(DescribeContainerInstancesResult)
+        1 * mockECSClient.describeContainerInstances({ it.containerInstances.size() == 50 }) >>
+                Mock(DescribeContainerInstancesResult)
+    }
+
+    def "new AmazonECSDiscoveryStrategy() - task events make full discovery an infrequent reconciliation"() {
+        when:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.EVENT_RECONCILIATION_INTERVAL_SECONDS.key()): 120],
+                mockECSClient, mockEC2Client, containerPort, new InMemoryTaskEventSource())
+
+        then:
+        strategy.backgroundRefreshIntervalSeconds == 120
+        strategy.maxSnapshotStalenessMillis == 180000
+    }
+
+    def "applyTaskEvents() - applies tasks starting and stopping to the snapshot"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.CLUSTER.key()): "my-cluster"],
+                mockECSClient, mockEC2Client, containerPort, new InMemoryTaskEventSource())
+        strategy.refresher = Mock(ScheduledExecutorService)
+        mockECSClient.listTasks(_) >> new ListTasksResult().withTaskArns("arn-1")
+        mockECSClient.describeTasks(_) >> new DescribeTasksResult().withTasks(awsvpcTask("arn-1", "10.0.0.1"))
+        strategy.discoverNodes()
+
+        when:
+        strategy.applyTaskEvents([
+                taskEvent(awsvpcTask("arn-2", "10.0.0.2"), "my-cluster", "RUNNING"),
+                taskEvent(awsvpcTask("arn-3", "10.0.0.3"), "other-cluster", "RUNNING")])
+        def joined = strategy.discoverNodes().collect { it.privateAddress.host }
+        strategy.applyTaskEvents([taskEvent(awsvpcTask("arn-1", "10.0.0.1"), "my-cluster", "STOPPED")])
+        def left = strategy.discoverNodes().collect { it.privateAddress.host }
+
+        then:
+        joined as Set == ["10.0.0.1", "10.0.0.2"] as Set
+        left == ["10.0.0.2"]
+        0 * mockECSClient.listTasks(_)
+    }
+
+    def "applyTaskEvents() - ignores outdated events and events for stopped tasks"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.CLUSTER.key()): "my-cluster"],
+                mockECSClient, mockEC2Client, containerPort, new InMemoryTaskEventSource())
+        strategy.refresher = Mock(ScheduledExecutorService)
+        mockECSClient.listTasks(_) >> new ListTasksResult().withTaskArns("arn-1")
+        mockECSClient.describeTasks(_) >> new DescribeTasksResult().withTasks(awsvpcTask("arn-1", "10.0.0.1"))
+        strategy.discoverNodes()
+
+        when: "a task turns unhealthy, and the earlier event of it being healthy arrives late"
+        strategy.applyTaskEvents([
+                taskEvent(awsvpcTask("arn-2", "10.0.0.2"), "my-cluster", "RUNNING").withVersion(3)
+                        .withHealthStatus("UNHEALTHY"),
+                taskEvent(awsvpcTask("arn-2", "10.0.0.2"), "my-cluster", "RUNNING").withVersion(2)])
+
+        then:
+        strategy.discoverNodes()*.privateAddress*.host == ["10.0.0.1"]
+
+        when: "a task stops, and an event of it running arrives late"
+        strategy.applyTaskEvents([taskEvent(awsvpcTask("arn-1", "10.0.0.1"), "my-cluster", "STOPPED").withVersion(5)])
+        strategy.applyTaskEvents([taskEvent(awsvpcTask("arn-1", "10.0.0.1"), "my-cluster", "RUNNING").withVersion(6)])
+
+        then:
+        strategy.discoverNodes().empty
+    }
+
+    def "applyTaskEvents() - doesn't publish a snapshot before the first full discovery"() {
+        given:
+        strategy = new AmazonECSDiscoveryStrategy(logger,
+                [(AmazonECSDiscoveryProperties.CLUSTER.key()): "my-cluster"],
+                mockECSClient, mockEC2Client, containerPort, new InMemoryTaskEventSource())
+
+        when:
+        strategy.applyTaskEvents([taskEvent(awsvpcTask("arn-1", "10.0.0.1"), "my-cluster", "RUNNING")])
+
+        then:
+        strategy.snapshotAgeMillis == -1
+    }
+
+    def "applyTaskEvents() - doesn't publish a snapshot while using the nodes discovered by another member"() {
+        given:
+        def sharedStore = new InMemorySharedDiscoveryStore()
+        def properties = [(AmazonECSDiscoveryProperties.CLUSTER.key()): "my-cluster"]
+        def leader = new AmazonECSDiscoveryStrategy(logger, properties,
+                mockECSClient, mockEC2Client, containerPort, null, sharedStore)
+        strategy = new AmazonECSDiscoveryStrategy(logger, properties,
+                mockECSClient, mockEC2Client, containerPort, new InMemoryTaskEventSource(), sharedStore)
+        strategy.refresher = Mock(ScheduledExecutorService)
+        mockECSClient.listTasks(_) >> new ListTasksResult().withTaskArns("arn-1", "arn-2")
+        mockECSClient.describeTasks(_) >> new DescribeTasksResult().withTasks(
+                awsvpcTask("arn-1", "10.0.0.1"), awsvpcTask("arn-2", "10.0.0.2"))
+        leader.discoverNodes()
+        strategy.discoverNodes()
+
+        when:
+        strategy.applyTaskEvents([taskEvent(awsvpcTask("arn-3", "10.0.0.3"), "my-cluster", "RUNNING")])
+
+        then:
+        strategy.discoverNodes()*.privateAddress*.host as Set == ["10.0.0.1", "10.0.0.2"] as Set
+        strategy.lastKnownGoodNodes.empty
+
+        cleanup:
+        leader.destroy()
+    }
+
+    def "discoverNodes() - members sharing discovered nodes don't all query ECS"() {
+        given:
+        def sharedStore = new InMemorySharedDiscoveryStore()
+        def otherECSClient = Mock(AmazonECSClient)
+        strategy = new AmazonECSDiscoveryStrategy(logger, [(AmazonECSDiscoveryProperties.CLUSTER.key()): "c"],
+                mockECSClient, mockEC2Client, containerPort, null, sharedStore)
+        def otherStrategy = new AmazonECSDiscoveryStrategy(logger, [(AmazonECSDiscoveryProperties.CLUSTER.key()): "c"],
+                otherECSClient, mockEC2Client, containerPort, null, sharedStore)
+        mockECSClient.listTasks(_) >> new ListTasksResult().withTaskArns("arn-1")
+        mockECSClient.describeTasks(_) >> new DescribeTasksResult().withTasks(awsvpcTask("arn-1", "10.0.0.1"))
+
+        when:
+        def nodes = strategy.discoverNodes()
+        def otherNodes = otherStrategy.discoverNodes()
+
+        then:
+        0 * otherECSClient._
+        nodes*.privateAddress*.host == ["10.0.0.1"]
+        otherNodes*.privateAddress*.host == ["10.0.0.1"]
+    }
+
+    private static Task taskEvent(Task task, String clusterName, String desiredStatus) {
+        return task
+                .withClusterArn("arn:aws:ecs:us-east-1:123456789012:cluster/" + clusterName)
+                .withDesiredStatus(desiredStatus)
+    }
+
+    private static Task awsvpcTask(String taskArn, String ipAddress) {
+        return new Task()
+                .withTaskArn(taskArn)
+                .withLastStatus("RUNNING")
+                .withAttachments(new Attachment()
+                        .withType("ElasticNetworkInterface")
+                        .withDetails(new KeyValuePair().withName("privateIPv4Address").withValue(ipAddress)))
+                .withContainers(new Container().withName("hazelcast"))
     }
 
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery
+
+import com.amazonaws.AmazonServiceException
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+import java.util.function.Supplier
+
+class AmazonECSDiscoveryThrottleSpec extends Specification {
+
+    static final long BASE_DELAY = TimeUnit.MILLISECONDS.toNanos(100)
+    static final long MAX_DELAY = TimeUnit.SECONDS.toNanos(5)
+
+    List<Long> sleeps = []
+    AmazonECSDiscoveryThrottle throttle = new AmazonECSDiscoveryThrottle(new TokenBucket(1000, 1000), 3,
+            BASE_DELAY, MAX_DELAY, { sleeps << it } as AmazonECSDiscoveryThrottle.Sleeper)
+
+    def "call() - retries throttled calls with backoff"() {
+        given:
+        def call = Mock(Supplier)
+
+        when:
+        def result = throttle.call(AmazonECSDiscoveryApi.LIST_TASKS, call)
+
+        then:
+        2 * call.get() >> { throw throttlingException() }
+        1 * call.get() >> "result"
+        result == "result"
+        sleeps.findAll { it >= BASE_DELAY }.size() == 2
+    }
+
+    def "call() - gives up after the maximum number of attempts"() {
+        given:
+        def call = Mock(Supplier)
+
+        when:
+        throttle.call(AmazonECSDiscoveryApi.LIST_TASKS, call)
+
+        then:
+        3 * call.get() >> { throw throttlingException() }
+        thrown(AmazonServiceException)
+    }
+
+    def "call() - doesn't retry other errors"() {
+        given:
+        def call = Mock(Supplier)
+
+        when:
+        throttle.call(AmazonECSDiscoveryApi.LIST_TASKS, call)
+
+        then:
+        1 * call.get() >> { throw new AmazonServiceException("Access denied") }
+        thrown(AmazonServiceException)
+        sleeps.empty
+    }
+
+    def "nextDelayNanos() - stays between the base delay and the maximum delay"() {
+        expect:
+        (1..100).every {
+            def delay = throttle.nextDelayNanos(previous)
+            delay >= BASE_DELAY && delay <= Math.min(MAX_DELAY, Math.max(BASE_DELAY, previous) * 3)
+        }
+
+        where:
+        previous << [0L, BASE_DELAY, TimeUnit.SECONDS.toNanos(1), MAX_DELAY]
+    }
+
+    private static AmazonServiceException throttlingException() {
+        def e = new AmazonServiceException("Rate exceeded")
+        e.errorCode = "ThrottlingException"
+        return e
+    }
+
+}
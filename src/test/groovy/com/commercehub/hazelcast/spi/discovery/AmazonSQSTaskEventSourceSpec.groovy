@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery
+
+import com.amazonaws.services.sns.AmazonSNS
+import com.amazonaws.services.sns.model.SubscribeResult
+import com.amazonaws.services.sqs.AmazonSQS
+import com.amazonaws.services.sqs.model.CreateQueueResult
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult
+import com.amazonaws.services.sqs.model.Message
+import com.amazonaws.services.sqs.model.ReceiveMessageResult
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class AmazonSQSTaskEventSourceSpec extends Specification {
+
+    static final String TASK_STATE_CHANGE = JsonOutput.toJson([
+            "detail-type": "ECS Task State Change",
+            source       : "aws.ecs",
+            detail       : [
+                    taskArn          : "arn:aws:ecs:us-east-1:123456789012:task/blue/abc",
+                    clusterArn       : "arn:aws:ecs:us-east-1:123456789012:cluster/blue",
+                    taskDefinitionArn: "arn:aws:ecs:us-east-1:123456789012:task-definition/hz:3",
+                    group            : "service:hz",
+                    lastStatus       : "RUNNING",
+                    desiredStatus    : "RUNNING",
+                    version          : 4,
+                    containers       : [[
+                            name           : "hazelcast",
+                            networkBindings: [[containerPort: 5701, hostPort: 32768, protocol: "tcp"]]
+                    ]],
+                    attachments      : [[
+                            type   : "eni",
+                            details: [[name: "privateIPv4Address", value: "10.0.0.1"]]
+                    ]]
+            ]
+    ])
+
+    def "parseTaskStateChange() - EventBridge event"() {
+        when:
+        def task = AmazonSQSTaskEventSource.parseTaskStateChange(TASK_STATE_CHANGE)
+
+        then:
+        task.taskArn == "arn:aws:ecs:us-east-1:123456789012:task/blue/abc"
+        task.clusterArn == "arn:aws:ecs:us-east-1:123456789012:cluster/blue"
+        task.group == "service:hz"
+        task.lastStatus == "RUNNING"
+        task.desiredStatus == "RUNNING"
+        task.version == 4
+        task.containers*.networkBindings.flatten()*.hostPort == [32768]
+        task.attachments*.type == ["ElasticNetworkInterface"]
+        task.attachments*.details.flatten()*.value == ["10.0.0.1"]
+    }
+
+    def "parseTaskStateChange() - event wrapped in an SNS notification"() {
+        when:
+        def task = AmazonSQSTaskEventSource.parseTaskStateChange(
+                JsonOutput.toJson([Type: "Notification", Message: TASK_STATE_CHANGE]))
+
+        then:
+        task.taskArn == "arn:aws:ecs:us-east-1:123456789012:task/blue/abc"
+    }
+
+    def "parseTaskStateChange() - ignores other messages"() {
+        expect:
+        AmazonSQSTaskEventSource.parseTaskStateChange(message) == null
+
+        where:
+        message << ["not json", JsonOutput.toJson(["detail-type": "ECS Container Instance State Change"])]
+    }
+
+    def "subscribe() - creates a queue for the member subscribed to the topic, and deletes it on close"() {
+        given:
+        def sqsClient = Mock(AmazonSQS)
+        def snsClient = Mock(AmazonSNS)
+        def topicArn = "arn:aws:sns:us-east-1:123456789012:ecs-events"
+        def queueArn = "arn:aws:sqs:us-east-1:123456789012:queue"
+        def policy = null
+
+        when:
+        def eventSource = AmazonSQSTaskEventSource.subscribe(sqsClient, snsClient, topicArn)
+
+        then:
+        1 * sqsClient.createQueue({ it.queueName.startsWith(AmazonSQSTaskEventSource.QUEUE_NAME_PREFIX) }) >>
+                new CreateQueueResult().withQueueUrl("queue-url")
+        1 * sqsClient.getQueueAttributes("queue-url", ["QueueArn"]) >>
+                new GetQueueAttributesResult().withAttributes([QueueArn: queueArn])
+        1 * sqsClient.setQueueAttributes("queue-url", { policy = it.Policy })
+        1 * snsClient.subscribe(topicArn, "sqs", queueArn) >> new SubscribeResult().withSubscriptionArn("sub")
+        with(new JsonSlurper().parseText(policy).Statement[0]) {
+            Resource == queueArn
+            Principal.Service == "sns.amazonaws.com"
+            Condition.ArnEquals."aws:SourceArn" == topicArn
+        }
+
+        when:
+        eventSource.close()
+
+        then:
+        1 * snsClient.unsubscribe("sub")
+        1 * sqsClient.deleteQueue("queue-url")
+        0 * sqsClient.shutdown()
+    }
+
+    def "subscribe() - deletes the queue if subscribing fails"() {
+        given:
+        def sqsClient = Mock(AmazonSQS)
+        def snsClient = Mock(AmazonSNS)
+        sqsClient.createQueue(_) >> new CreateQueueResult().withQueueUrl("queue-url")
+        sqsClient.getQueueAttributes(*_) >> new GetQueueAttributesResult().withAttributes([QueueArn: "queue-arn"])
+        snsClient.subscribe(*_) >> { throw new IllegalStateException("denied") }
+
+        when:
+        AmazonSQSTaskEventSource.subscribe(sqsClient, snsClient, "topic-arn")
+
+        then:
+        thrown(IllegalStateException)
+        1 * sqsClient.deleteQueue("queue-url")
+    }
+
+    def "poll() - returns the task state changes received and deletes all messages"() {
+        given:
+        def sqsClient = Mock(AmazonSQS)
+        def eventSource = new AmazonSQSTaskEventSource(sqsClient, "queue-url")
+
+        when:
+        def tasks = eventSource.poll(30, TimeUnit.SECONDS)
+
+        then:
+        1 * sqsClient.receiveMessage({ it.queueUrl == "queue-url" && it.waitTimeSeconds == 20 }) >>
+                new ReceiveMessageResult().withMessages(
+                        new Message().withMessageId("1").withReceiptHandle("r1").withBody(TASK_STATE_CHANGE),
+                        new Message().withMessageId("2").withReceiptHandle("r2").withBody("{}"))
+        1 * sqsClient.deleteMessageBatch("queue-url", { it*.receiptHandle == ["r1", "r2"] })
+        tasks*.taskArn == ["arn:aws:ecs:us-east-1:123456789012:task/blue/abc"]
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+import java.util.function.LongSupplier
+
+class ContainerInstanceAddressCacheSpec extends Specification {
+
+    long now = 0
+    LongSupplier clock = { now } as LongSupplier
+
+    def "getIpAddress() - returns cached address until it expires"() {
+        given:
+        def cache = new ContainerInstanceAddressCache(10, TimeUnit.NANOSECONDS, 10, clock)
+        cache.put("arn", "10.0.0.1")
+
+        expect:
+        cache.getIpAddress("arn") == "10.0.0.1"
+
+        when:
+        now = 10
+
+        then:
+        cache.getIpAddress("arn") == null
+        cache.size() == 0
+    }
+
+    def "getEc2InstanceId() - returns cached EC2 instance ID after the address expires"() {
+        given:
+        def cache = new ContainerInstanceAddressCache(10, TimeUnit.NANOSECONDS, 10, clock)
+        cache.putEc2InstanceId("arn", "i-1")
+        cache.put("arn", "10.0.0.1")
+
+        when:
+        now = 10
+
+        then:
+        cache.getIpAddress("arn") == null
+        cache.getEc2InstanceId("arn") == "i-1"
+    }
+
+    def "put() - evicts the least recently used entry when full"() {
+        given:
+        def cache = new ContainerInstanceAddressCache(1, TimeUnit.HOURS, 2, clock)
+        cache.put("arn-1", "10.0.0.1")
+        cache.put("arn-2", "10.0.0.2")
+        cache.getIpAddress("arn-1")
+
+        when:
+        cache.put("arn-3", "10.0.0.3")
+
+        then:
+        cache.getIpAddress("arn-1") == "10.0.0.1"
+        cache.getIpAddress("arn-2") == null
+        cache.getIpAddress("arn-3") == "10.0.0.3"
+    }
+
+    def "retainAll() - invalidates container instances that disappeared"() {
+        given:
+        def cache = new ContainerInstanceAddressCache(1, TimeUnit.HOURS, 10, clock)
+        cache.put("arn-1", "10.0.0.1")
+        cache.put("arn-2", "10.0.0.2")
+        cache.putEc2InstanceId("arn-1", "i-1")
+
+        when:
+        cache.retainAll(["arn-2"])
+
+        then:
+        cache.getIpAddress("arn-1") == null
+        cache.getEc2InstanceId("arn-1") == null
+        cache.getIpAddress("arn-2") == "10.0.0.2"
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery
+
+import com.hazelcast.nio.Address
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class DiscoveryNodeSnapshotFileSpec extends Specification {
+
+    Path directory = Files.createTempDirectory("hazelcast-ecs")
+    Path path = directory.resolve("nodes")
+    DiscoveryNodeSnapshotFile snapshotFile = new DiscoveryNodeSnapshotFile(path)
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    def "write() - nodes can be read back"() {
+        given:
+        def nodes = [new SimpleDiscoveryNode(new Address("10.0.0.1", 5701)),
+                     new SimpleDiscoveryNode(new Address("10.0.0.2", 32768))]
+
+        when:
+        snapshotFile.write(nodes)
+
+        then:
+        snapshotFile.read()*.privateAddress == nodes*.privateAddress
+        Files.list(directory).count() == 1
+    }
+
+    def "write() - replaces the previous snapshot"() {
+        given:
+        snapshotFile.write([new SimpleDiscoveryNode(new Address("10.0.0.1", 5701))])
+
+        when:
+        snapshotFile.write([new SimpleDiscoveryNode(new Address("10.0.0.2", 5701))])
+
+        then:
+        snapshotFile.read()*.privateAddress*.host == ["10.0.0.2"]
+    }
+
+    def "read() - no snapshot file returns empty list"() {
+        expect:
+        snapshotFile.read().empty
+    }
+
+    def "read() - malformed snapshot file throws"() {
+        given:
+        Files.write(path, "10.0.0.1\n".bytes)
+
+        when:
+        snapshotFile.read()
+
+        then:
+        thrown(IOException)
+    }
+
+}
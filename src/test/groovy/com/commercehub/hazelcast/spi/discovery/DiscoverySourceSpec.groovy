@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery
+
+import com.amazonaws.services.ecs.model.Task
+import com.hazelcast.config.InvalidConfigurationException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class DiscoverySourceSpec extends Specification {
+
+    static final String CLUSTER_ARN = "arn:aws:ecs:us-east-1:123456789012:cluster/blue"
+    static final String TASK_DEFINITION_ARN = "arn:aws:ecs:us-east-1:123456789012:task-definition/hz-task:7"
+
+    def "parse() - clusters, services and task families"() {
+        when:
+        def sources = DiscoverySource.parse("blue/hazelcast, green , arn:aws:ecs:us-east-1:123:cluster/x/family:hz,")
+
+        then:
+        sources*.clusterName == ["blue", "green", "arn:aws:ecs:us-east-1:123:cluster/x"]
+        sources*.serviceName == ["hazelcast", null, null]
+        sources*.family == [null, null, "hz"]
+        sources*.toString() == ["blue/hazelcast", "green", "arn:aws:ecs:us-east-1:123:cluster/x/family:hz"]
+    }
+
+    def "parse() - task family"() {
+        when:
+        def source = DiscoverySource.parse("blue/family:hazelcast").first()
+
+        then:
+        source.clusterName == "blue"
+        source.serviceName == null
+        source.family == "hazelcast"
+    }
+
+    @Unroll
+    def "matches() - #source matches a task in #clusterArn/#group/#taskDefinitionArn: #expected"() {
+        given:
+        def task = new Task().withClusterArn(clusterArn).withGroup(group).withTaskDefinitionArn(taskDefinitionArn)
+
+        expect:
+        DiscoverySource.parse(source).first().matches(task) == expected
+
+        where:
+        source                 | clusterArn     | group              | taskDefinitionArn         || expected
+        "blue"                 | CLUSTER_ARN    | "service:hz"       | TASK_DEFINITION_ARN       || true
+        CLUSTER_ARN            | CLUSTER_ARN    | "service:hz"       | TASK_DEFINITION_ARN       || true
+        "green"                | CLUSTER_ARN    | "service:hz"       | TASK_DEFINITION_ARN       || false
+        "blue/hz"              | CLUSTER_ARN    | "service:hz"       | TASK_DEFINITION_ARN       || true
+        "blue/other"           | CLUSTER_ARN    | "service:hz"       | TASK_DEFINITION_ARN       || false
+        "blue/family:hz-task"  | CLUSTER_ARN    | "family:hz-task"   | TASK_DEFINITION_ARN       || true
+        "blue/family:hz"       | CLUSTER_ARN    | "service:hz"       | TASK_DEFINITION_ARN       || false
+        "blue"                 | null           | "service:hz"       | TASK_DEFINITION_ARN       || false
+    }
+
+    def "matches() - default cluster source matches tasks in any cluster"() {
+        expect:
+        new DiscoverySource(null, null, null).matches(new Task().withClusterArn(CLUSTER_ARN))
+    }
+
+    @Unroll
+    def "parse() - malformed source '#sources'"() {
+        when:
+        DiscoverySource.parse(sources)
+
+        then:
+        thrown(InvalidConfigurationException)
+
+        where:
+        sources << ["/service", "cluster/", "cluster/family:"]
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commercehub.hazelcast.spi.discovery
+
+import com.hazelcast.nio.Address
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class FileSharedDiscoveryStoreSpec extends Specification {
+
+    Path directory = Files.createTempDirectory("hazelcast-ecs")
+    FileSharedDiscoveryStore store = new FileSharedDiscoveryStore(directory.resolve("shared/nodes"))
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    def "read() - nothing published returns null"() {
+        expect:
+        store.read() == null
+    }
+
+    def "compareAndSet() - published state can be read back"() {
+        given:
+        def state = new SharedDiscoveryState("member-1", 1000,
+                [new SimpleDiscoveryNode(new Address("10.0.0.1", 5701))])
+
+        when:
+        def published = store.compareAndSet(null, state)
+        def read = store.read()
+
+        then:
+        published
+        read.ownerId == "member-1"
+        read.publishedAtMillis == 1000
+        read.nodes*.privateAddress == state.nodes*.privateAddress
+    }
+
+    def "compareAndSet() - fails if another member published in the meantime"() {
+        given:
+        def first = new SharedDiscoveryState("member-1", 1000, [])
+        def second = new SharedDiscoveryState("member-2", 1001, [])
+        store.compareAndSet(null, first)
+
+        when:
+        def replacedStale = store.compareAndSet(null, second)
+        def replacedCurrent = store.compareAndSet(store.read(), second)
+
+        then:
+        !replacedStale
+        replacedCurrent
+        store.read().ownerId == "member-2"
+    }
+
+    def "read() - malformed file throws"() {
+        given:
+        Files.createDirectories(store.path.parent)
+        Files.write(store.path, "10.0.0.1:5701\n".bytes)
+
+        when:
+        store.read()
+
+        then:
+        thrown(IOException)
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commercehub.hazelcast.spi.discovery
+
+import com.hazelcast.logging.ILogger
+import com.hazelcast.nio.Address
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode
+import spock.lang.Specification
+
+import java.util.function.Supplier
+
+class SharedDiscoveryCoordinatorSpec extends Specification {
+
+    static final long TTL_MILLIS = 30000
+
+    def store = new InMemorySharedDiscoveryStore()
+    long now = 100000
+    def leader = coordinator("leader")
+    def follower = coordinator("follower")
+    def nodes = [new SimpleDiscoveryNode(new Address("10.0.0.1", 5701))]
+
+    def "discover() - the first member to discover nodes publishes them to the others"() {
+        given:
+        Supplier<ResolvedNodes> leaderResolver = Mock(Supplier)
+        Supplier<ResolvedNodes> followerResolver = Mock(Supplier)
+
+        when:
+        def leaderNodes = leader.discover(leaderResolver)
+        now += 1000
+        def followerNodes = follower.discover(followerResolver)
+
+        then:
+        1 * leaderResolver.get() >> new ResolvedNodes(nodes, true)
+        0 * followerResolver.get()
+        leaderNodes == nodes
+        followerNodes*.privateAddress == nodes*.privateAddress
+        store.read().ownerId == "leader"
+    }
+
+    def "discover() - the leader keeps discovering and publishing"() {
+        given:
+        Supplier<ResolvedNodes> resolver = Mock(Supplier)
+        leader.discover { new ResolvedNodes(nodes, true) }
+
+        when:
+        now += 1000
+        leader.discover(resolver)
+
+        then:
+        1 * resolver.get() >> new ResolvedNodes(nodes, true)
+        store.read().publishedAtMillis == now
+    }
+
+    def "discover() - stale shared nodes are discovered again, and the member doing so takes over"() {
+        given:
+        Supplier<ResolvedNodes> resolver = Mock(Supplier)
+        leader.discover { new ResolvedNodes(nodes, true) }
+
+        when:
+        now += TTL_MILLIS + 1
+        follower.discover(resolver)
+
+        then:
+        1 * resolver.get() >> new ResolvedNodes(nodes, true)
+        store.read().ownerId == "follower"
+    }
+
+    def "discover() - incomplete discoveries aren't published, so followers fall back to their own"() {
+        given:
+        Supplier<ResolvedNodes> followerResolver = Mock(Supplier)
+        leader.discover { new ResolvedNodes(nodes, true) }
+
+        when:
+        now += 1000
+        def leaderNodes = leader.discover { new ResolvedNodes([], false) }
+
+        then:
+        leaderNodes.empty
+        store.read().publishedAtMillis == now - 1000
+        store.read().nodes*.privateAddress == nodes*.privateAddress
+
+        when:
+        now += TTL_MILLIS
+        follower.discover(followerResolver)
+
+        then:
+        1 * followerResolver.get() >> new ResolvedNodes(nodes, true)
+        store.read().ownerId == "follower"
+    }
+
+    def "discover() - unreadable store falls back to discovering nodes"() {
+        given:
+        def failingStore = Mock(SharedDiscoveryStore)
+        failingStore.read() >> { throw new IOException("unreachable") }
+        def coordinator = new SharedDiscoveryCoordinator(failingStore, "member", TTL_MILLIS, { now }, Mock(ILogger))
+
+        when:
+        def discovered = coordinator.discover { new ResolvedNodes(nodes, true) }
+
+        then:
+        discovered == nodes
+        0 * failingStore.compareAndSet(_, _)
+    }
+
+    private SharedDiscoveryCoordinator coordinator(String memberId) {
+        return new SharedDiscoveryCoordinator(store, memberId, TTL_MILLIS, { now }, Mock(ILogger))
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+import java.util.function.LongSupplier
+
+class TokenBucketSpec extends Specification {
+
+    long now = 0
+    LongSupplier clock = { now } as LongSupplier
+
+    def "reserve() - allows bursts up to the capacity, then queues callers"() {
+        given:
+        def bucket = new TokenBucket(10, 2, clock)
+
+        expect:
+        bucket.reserve() == 0
+        bucket.reserve() == 0
+        bucket.reserve() == TimeUnit.MILLISECONDS.toNanos(100)
+        bucket.reserve() == TimeUnit.MILLISECONDS.toNanos(200)
+    }
+
+    def "reserve() - refills at the configured rate up to the capacity"() {
+        given:
+        def bucket = new TokenBucket(10, 2, clock)
+        3.times { bucket.reserve() }
+
+        when:
+        now = TimeUnit.SECONDS.toNanos(10)
+
+        then:
+        bucket.tokens == 2
+    }
+
+    def "drain() - makes the next caller wait for a refill"() {
+        given:
+        def bucket = new TokenBucket(10, 2, clock)
+
+        when:
+        bucket.drain()
+
+        then:
+        bucket.reserve() == TimeUnit.MILLISECONDS.toNanos(100)
+    }
+
+}
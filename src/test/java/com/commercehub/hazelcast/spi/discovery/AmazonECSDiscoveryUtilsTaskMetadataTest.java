@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.ecs.AmazonECS;
+import com.amazonaws.services.ecs.model.DescribeTasksRequest;
+import com.amazonaws.services.ecs.model.DescribeTasksResult;
+import com.amazonaws.services.ecs.model.ListTasksRequest;
+import com.amazonaws.services.ecs.model.Task;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests {@link AmazonECSDiscoveryUtils} against a local stub of the ECS Task Metadata endpoint (v4).
+ */
+public class AmazonECSDiscoveryUtilsTaskMetadataTest {
+
+    private static final String ECS_CLUSTER_NAME = "default-ecs-cluster-Cluster-1XC1HAMRI9XVK";
+    private static final String ECS_SERVICE_NAME = "foo-service";
+    private static final String TASK_ARN = "arn:aws:ecs:us-east-1:10000000000:task/5c26ebf5-56ae-4121-9f90-28a5f1295851";
+    private static final String TASK_IP_ADDRESS = "10.0.2.106";
+    private static final int CONTAINER_PORT = 5701;
+
+    private static final String CONTAINER_JSON = "{\"DockerId\":\"c63e3a0c7b25\",\"Name\":\"foo\"," +
+            "\"Ports\":[{\"ContainerPort\":5701,\"Protocol\":\"tcp\",\"HostPort\":5701}]," +
+            "\"Networks\":[{\"NetworkMode\":\"awsvpc\",\"IPv4Addresses\":[\"" + TASK_IP_ADDRESS + "\"]}]}";
+
+    private HttpServer server;
+    private AmazonECS amazonECS;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.start();
+        System.setProperty(AmazonECSAgentIntrospectionUtils.ECS_CONTAINER_METADATA_URI_V4_OVERRIDE_SYSTEM_PROPERTY,
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v4/0123");
+
+        amazonECS = mock(AmazonECS.class);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(AmazonECSAgentIntrospectionUtils.ECS_CONTAINER_METADATA_URI_V4_OVERRIDE_SYSTEM_PROPERTY);
+        server.stop(0);
+    }
+
+    @Test
+    public void discoversIdentityWithoutCallingECS() throws AmazonECSDiscoveryException {
+        serveTaskMetadata(taskJson("\"ServiceName\":\"" + ECS_SERVICE_NAME + "\","));
+
+        AmazonECSDiscoveryUtils amazonECSDiscoveryUtils = new AmazonECSDiscoveryUtils(amazonECS);
+
+        String clusterName = amazonECSDiscoveryUtils.discoverClusterName();
+        assertEquals(ECS_CLUSTER_NAME, clusterName);
+        //noinspection ConstantConditions
+        assertEquals(ECS_SERVICE_NAME, amazonECSDiscoveryUtils.discoverServiceName(clusterName).get());
+        assertEquals(TASK_IP_ADDRESS + ":" + CONTAINER_PORT,
+                amazonECSDiscoveryUtils.discoverPublicHazelcastAddress(CONTAINER_PORT));
+
+        verifyZeroInteractions(amazonECS);
+    }
+
+    @Test
+    public void fallsBackToDescribeTasksForServiceName() throws AmazonECSDiscoveryException {
+        serveTaskMetadata(taskJson(""));
+        when(amazonECS.describeTasks(any(DescribeTasksRequest.class))).thenReturn(new DescribeTasksResult()
+                .withTasks(new Task().withGroup("service:" + ECS_SERVICE_NAME)));
+
+        AmazonECSDiscoveryUtils amazonECSDiscoveryUtils = new AmazonECSDiscoveryUtils(amazonECS);
+
+        //noinspection ConstantConditions
+        assertEquals(ECS_SERVICE_NAME, amazonECSDiscoveryUtils.discoverServiceName(ECS_CLUSTER_NAME).get());
+        verify(amazonECS, times(1)).describeTasks(any(DescribeTasksRequest.class));
+    }
+
+    @Test
+    public void bootstrapsIdentityAndWarmsUpECS() throws Exception {
+        serveTaskMetadata(taskJson("\"ServiceName\":\"" + ECS_SERVICE_NAME + "\","));
+
+        AmazonECSDiscoveryUtils amazonECSDiscoveryUtils = new AmazonECSDiscoveryUtils(amazonECS);
+
+        AmazonECSBootstrap bootstrap =
+                amazonECSDiscoveryUtils.bootstrap(CONTAINER_PORT, 10, TimeUnit.SECONDS).get();
+        assertEquals(ECS_CLUSTER_NAME, bootstrap.getClusterName());
+        assertEquals(ECS_SERVICE_NAME, bootstrap.getServiceName());
+        assertEquals(TASK_IP_ADDRESS + ":" + CONTAINER_PORT, bootstrap.getPublicHazelcastAddress());
+        assertEquals(ECS_CLUSTER_NAME, bootstrap.getDiscoveryProperties().get("cluster"));
+        assertEquals(ECS_SERVICE_NAME, bootstrap.getDiscoveryProperties().get("service"));
+
+        // The identity is cached, so discovery doesn't look it up again
+        server.removeContext("/v4/0123");
+        //noinspection ConstantConditions
+        assertEquals(ECS_SERVICE_NAME, amazonECSDiscoveryUtils.discoverServiceName(ECS_CLUSTER_NAME).get());
+
+        verify(amazonECS, timeout(5000)).listTasks(any(ListTasksRequest.class));
+    }
+
+    @Test
+    public void bootstrapFailsWithTimeout() throws Exception {
+        server.createContext("/v4/0123", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, CONTAINER_JSON);
+        });
+
+        AmazonECSDiscoveryUtils amazonECSDiscoveryUtils = new AmazonECSDiscoveryUtils(amazonECS);
+
+        try {
+            amazonECSDiscoveryUtils.bootstrap(CONTAINER_PORT, 100, TimeUnit.MILLISECONDS).get();
+            fail("Expected the bootstrap to time out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void bootstrapFailsWithoutMatchingPort() throws Exception {
+        serveTaskMetadata(taskJson("\"ServiceName\":\"" + ECS_SERVICE_NAME + "\","));
+
+        AmazonECSDiscoveryUtils amazonECSDiscoveryUtils = new AmazonECSDiscoveryUtils(amazonECS);
+
+        try {
+            amazonECSDiscoveryUtils.bootstrap(CONTAINER_PORT + 1, 10, TimeUnit.SECONDS).get();
+            fail("Expected the bootstrap to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof PublicHazelcastAddressNotFoundException);
+        }
+    }
+
+    private void serveTaskMetadata(String taskJson) {
+        server.createContext("/v4/0123", exchange -> respond(exchange, CONTAINER_JSON));
+        server.createContext("/v4/0123/task", exchange -> respond(exchange, taskJson));
+    }
+
+    private static String taskJson(String extraFields) {
+        return "{\"Cluster\":\"" + ECS_CLUSTER_NAME + "\",\"TaskARN\":\"" + TASK_ARN + "\"," + extraFields +
+                "\"Family\":\"service-TaskDefinition-KLW9WAUEMIX1\",\"Revision\":\"1\",\"LaunchType\":\"FARGATE\"," +
+                "\"Containers\":[" + CONTAINER_JSON + "]}";
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
@@ -19,6 +19,8 @@ package com.commercehub.hazelcast.spi.discovery;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -32,6 +34,7 @@ import com.amazonaws.services.ecs.model.Task;
 import com.amazonaws.util.EC2MetadataUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
@@ -41,6 +44,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @RunWith(PowerMockRunner.class)
+@PowerMockIgnore("javax.management.*")
 @PrepareForTest(value = { AmazonECSDiscoveryUtils.class, AmazonECSAgentIntrospectionUtils.class, EC2MetadataUtils.class })
 public class AmazonECSDiscoveryUtilsTest {
 
@@ -174,4 +178,69 @@ public class AmazonECSDiscoveryUtilsTest {
                 String.format("%s:%s", CONTAINER_INSTANCE_PRIVATE_IP_ADDRESS, HOST_PORT));
     }
 
+    @Test
+    public void resolvesSelfIdentityOnce()
+            throws UnknownHostException, AmazonECSDiscoveryException {
+
+        mockStatic(EC2MetadataUtils.class);
+        when(EC2MetadataUtils.getPrivateIpAddress()).thenReturn(CONTAINER_INSTANCE_PRIVATE_IP_ADDRESS);
+
+        InetAddress inetAddress = mock(InetAddress.class);
+        when(inetAddress.getHostName()).thenReturn(DOCKER_SHORT_ID);
+
+        mockStatic(InetAddress.class);
+        when(InetAddress.getLocalHost()).thenReturn(inetAddress);
+
+        AmazonECSAgentIntrospectionUtils.Metadata agentMetadata = new AmazonECSAgentIntrospectionUtils.Metadata(
+                ECS_CLUSTER_NAME,
+                CONTAINER_INSTANCE_ARN,
+                ECS_AGENT_VERSION);
+
+        AmazonECSAgentIntrospectionUtils.Container agentContainer = new AmazonECSAgentIntrospectionUtils.Container(
+                DOCKER_LONG_ID,
+                AGENT_CONTAINER_DOCKER_NAME,
+                CONTAINER_NAME);
+
+        List<AmazonECSAgentIntrospectionUtils.Container> agentContainers = new ArrayList<>();
+        agentContainers.add(agentContainer);
+
+        AmazonECSAgentIntrospectionUtils.Task agentTask = new AmazonECSAgentIntrospectionUtils.Task(
+                TASK_ARN,
+                TASK_STATUS_RUNNING,
+                TASK_STATUS_RUNNING,
+                TASK_FAMILY,
+                TASK_VERSION,
+                agentContainers);
+
+        mockStatic(AmazonECSAgentIntrospectionUtils.class);
+        when(AmazonECSAgentIntrospectionUtils.getMetadata()).thenReturn(agentMetadata);
+        when(AmazonECSAgentIntrospectionUtils.getTask(anyString())).thenReturn(agentTask);
+
+        NetworkBinding ecsNetworkBinding = new NetworkBinding()
+                .withHostPort(HOST_PORT)
+                .withContainerPort(CONTAINER_PORT);
+
+        Container ecsContainer = new Container().withName(CONTAINER_NAME).withNetworkBindings(ecsNetworkBinding);
+
+        Task ecsTask = new Task().withContainers(ecsContainer).withGroup(ECS_TASK_GROUP_NAME);
+        DescribeTasksResult describeTasksResult = new DescribeTasksResult().withTasks(ecsTask);
+
+        AmazonECS amazonECS = mock(AmazonECS.class);
+        when(amazonECS.describeTasks(any(DescribeTasksRequest.class))).thenReturn(describeTasksResult);
+
+        AmazonECSDiscoveryUtils amazonECSDiscoveryUtils = new AmazonECSDiscoveryUtils(amazonECS);
+
+        String clusterName = amazonECSDiscoveryUtils.discoverClusterName();
+        //noinspection ConstantConditions
+        assertEquals(amazonECSDiscoveryUtils.discoverServiceName(clusterName).get(), ECS_SERVICE_NAME);
+        assertEquals(amazonECSDiscoveryUtils.discoverPublicHazelcastAddress(CONTAINER_PORT),
+                String.format("%s:%s", CONTAINER_INSTANCE_PRIVATE_IP_ADDRESS, HOST_PORT));
+
+        AmazonECSDiscoveryUtils.SelfIdentity selfIdentity = amazonECSDiscoveryUtils.getSelfIdentity(clusterName);
+        assertEquals(selfIdentity.getTaskArn(), TASK_ARN);
+        assertEquals(selfIdentity.getContainerName(), CONTAINER_NAME);
+
+        verify(amazonECS, times(1)).describeTasks(any(DescribeTasksRequest.class));
+    }
+
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.amazonaws.SdkClientException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+public class AmazonECSIntrospectionClientTest {
+
+    private static final String METADATA_JSON = "{\"Cluster\":\"default\"," +
+            "\"ContainerInstanceArn\":\"arn:aws:ecs:us-east-1:10000000000:container-instance/f973c8d6\"," +
+            "\"Version\":\"Amazon ECS Agent - v1.14.3 (15de319)\"}";
+
+    private HttpServer server;
+    private ObjectMapper mapper;
+    private AmazonECSIntrospectionClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/metadata", exchange -> respond(exchange, 200, METADATA_JSON));
+        server.createContext("/v1/tasks", exchange -> respond(exchange, 404, "Not Found"));
+        server.start();
+
+        mapper = new ObjectMapper();
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        client = new AmazonECSIntrospectionClient(mapper, 500, 500, 2, 10, 0);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void parsesJsonResponse() {
+        AmazonECSAgentIntrospectionUtils.Metadata metadata =
+                client.get(baseUrl() + "/v1/metadata", AmazonECSAgentIntrospectionUtils.Metadata.class);
+
+        assertEquals("default", metadata.getCluster());
+        assertEquals("Amazon ECS Agent - v1.14.3 (15de319)", metadata.getVersion());
+    }
+
+    @Test
+    public void returnsNullForNonOkStatus() {
+        assertNull(client.get(baseUrl() + "/v1/tasks?dockerid=foo", AmazonECSAgentIntrospectionUtils.Task.class));
+    }
+
+    @Test
+    public void readsResponseAsString() {
+        assertEquals(METADATA_JSON, client.getString(baseUrl() + "/v1/metadata", 1));
+    }
+
+    @Test(expected = SdkClientException.class)
+    public void failsWhenEndpointIsUnreachable() {
+        String url = baseUrl() + "/v1/metadata";
+        server.stop(0);
+
+        client.get(url, AmazonECSAgentIntrospectionUtils.Metadata.class);
+    }
+
+    @Test
+    public void retriesRefusedConnectionsUntilEndpointStarts() throws Exception {
+        String url = baseUrl() + "/v1/metadata";
+        InetSocketAddress address = server.getAddress();
+        server.stop(0);
+        AmazonECSIntrospectionClient startingClient = new AmazonECSIntrospectionClient(mapper, 500, 500, 1, 50, 5000);
+
+        Thread starter = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+                server = HttpServer.create(address, 0);
+                server.createContext("/v1/metadata", exchange -> respond(exchange, 200, METADATA_JSON));
+                server.start();
+            } catch (InterruptedException | IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        starter.start();
+
+        try {
+            assertEquals(METADATA_JSON, startingClient.getString(url, 1));
+        } finally {
+            starter.join();
+        }
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body)
+            throws IOException {
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
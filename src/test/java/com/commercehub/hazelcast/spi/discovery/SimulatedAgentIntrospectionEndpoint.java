@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Local stub of the ECS Agent Introspection API, reporting that every Docker container ID asked for belongs to the
+ * first task of the simulated service, so that {@link AmazonECSDiscoveryUtils} can resolve the identity of this
+ * process without an ECS agent. The Task Metadata endpoint takes precedence over the agent, so it must not be
+ * simulated at the same time.
+ */
+class SimulatedAgentIntrospectionEndpoint implements AutoCloseable {
+
+    private static final String DOCKER_ID_PARAMETER = "dockerid=";
+
+    private final HttpServer server;
+
+    SimulatedAgentIntrospectionEndpoint(SimulatedTopology topology) throws IOException {
+        String taskArn = topology.getTaskArns().get(0);
+        String metadataJson = "{\"Cluster\":\"" + SimulatedTopology.CLUSTER_NAME + "\"," +
+                "\"ContainerInstanceArn\":\"" + topology.getTask(taskArn).getContainerInstanceArn() + "\"," +
+                "\"Version\":\"Amazon ECS Agent - v1.20.0\"}";
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/metadata", exchange -> respond(exchange, metadataJson));
+        server.createContext("/v1/tasks", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            String dockerId = query != null && query.startsWith(DOCKER_ID_PARAMETER)
+                    ? query.substring(DOCKER_ID_PARAMETER.length()) : "0123456789ab";
+            respond(exchange, "{\"Arn\":\"" + taskArn + "\",\"DesiredStatus\":\"RUNNING\"," +
+                    "\"KnownStatus\":\"RUNNING\",\"Family\":\"hazelcast\",\"Version\":\"1\"," +
+                    "\"Containers\":[{\"DockerId\":\"" + dockerId + "\",\"DockerName\":\"ecs-hazelcast\"," +
+                    "\"Name\":\"hazelcast\"}]}");
+        });
+        server.start();
+
+        System.setProperty(AmazonECSAgentIntrospectionUtils.ECS_AGENT_INTROSPECTION_API_OVERRIDE_SYSTEM_PROPERTY,
+                "http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @Override
+    public void close() {
+        System.clearProperty(AmazonECSAgentIntrospectionUtils.ECS_AGENT_INTROSPECTION_API_OVERRIDE_SYSTEM_PROPERTY);
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
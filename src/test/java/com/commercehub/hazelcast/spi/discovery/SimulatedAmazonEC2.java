@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.services.ec2.AbstractAmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory {@link com.amazonaws.services.ec2.AmazonEC2} backed by a {@link SimulatedTopology}.
+ */
+class SimulatedAmazonEC2 extends AbstractAmazonEC2 {
+
+    private final SimulatedTopology topology;
+    private final SimulatedAwsApi api;
+
+    SimulatedAmazonEC2(SimulatedTopology topology, SimulatedAwsApi api) {
+        this.topology = topology;
+        this.api = api;
+    }
+
+    @Override
+    public DescribeInstancesResult describeInstances(DescribeInstancesRequest request) {
+        api.call("AmazonEC2", "DescribeInstances");
+
+        List<Instance> instances = new ArrayList<>(request.getInstanceIds().size());
+        for (String instanceId : request.getInstanceIds()) {
+            Instance instance = topology.getEc2Instance(instanceId);
+            if (instance != null) {
+                instances.add(instance);
+            }
+        }
+        return new DescribeInstancesResult().withReservations(new Reservation().withInstances(instances));
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.services.ecs.AbstractAmazonECS;
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.DescribeContainerInstancesRequest;
+import com.amazonaws.services.ecs.model.DescribeContainerInstancesResult;
+import com.amazonaws.services.ecs.model.DescribeTasksRequest;
+import com.amazonaws.services.ecs.model.DescribeTasksResult;
+import com.amazonaws.services.ecs.model.Failure;
+import com.amazonaws.services.ecs.model.InvalidParameterException;
+import com.amazonaws.services.ecs.model.ListTasksRequest;
+import com.amazonaws.services.ecs.model.ListTasksResult;
+import com.amazonaws.services.ecs.model.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory {@link com.amazonaws.services.ecs.AmazonECS} backed by a {@link SimulatedTopology}. It enforces the
+ * paging and batch size limits of the real API, and only lists tasks that should be running.
+ */
+class SimulatedAmazonECS extends AbstractAmazonECS {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_DESCRIBE_BATCH_SIZE = 100;
+
+    private final SimulatedTopology topology;
+    private final SimulatedAwsApi api;
+
+    SimulatedAmazonECS(SimulatedTopology topology, SimulatedAwsApi api) {
+        this.topology = topology;
+        this.api = api;
+    }
+
+    @Override
+    public ListTasksResult listTasks(ListTasksRequest request) {
+        api.call("AmazonECS", "ListTasks");
+
+        List<String> taskArns = topology.getTaskArns();
+        int pageSize = request.getMaxResults() != null ? Math.min(request.getMaxResults(), PAGE_SIZE) : PAGE_SIZE;
+        int from = request.getNextToken() != null ? Integer.parseInt(request.getNextToken()) : 0;
+        int to = Math.min(from + pageSize, taskArns.size());
+
+        return new ListTasksResult()
+                .withTaskArns(new ArrayList<>(taskArns.subList(from, to)))
+                .withNextToken(to < taskArns.size() ? String.valueOf(to) : null);
+    }
+
+    @Override
+    public DescribeTasksResult describeTasks(DescribeTasksRequest request) {
+        api.call("AmazonECS", "DescribeTasks");
+        checkBatchSize(request.getTasks());
+
+        DescribeTasksResult result = new DescribeTasksResult()
+                .withTasks(new ArrayList<>())
+                .withFailures(new ArrayList<>());
+        for (String taskArn : request.getTasks()) {
+            Task task = topology.getTask(taskArn);
+            if (task != null) {
+                result.getTasks().add(task);
+            } else {
+                result.getFailures().add(new Failure().withArn(taskArn).withReason("MISSING"));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public DescribeContainerInstancesResult describeContainerInstances(DescribeContainerInstancesRequest request) {
+        api.call("AmazonECS", "DescribeContainerInstances");
+        checkBatchSize(request.getContainerInstances());
+
+        DescribeContainerInstancesResult result = new DescribeContainerInstancesResult()
+                .withContainerInstances(new ArrayList<>())
+                .withFailures(new ArrayList<>());
+        for (String containerInstanceArn : request.getContainerInstances()) {
+            ContainerInstance containerInstance = topology.getContainerInstance(containerInstanceArn);
+            if (containerInstance != null) {
+                result.getContainerInstances().add(containerInstance);
+            } else {
+                result.getFailures().add(new Failure().withArn(containerInstanceArn).withReason("MISSING"));
+            }
+        }
+        return result;
+    }
+
+    private static void checkBatchSize(List<String> arns) {
+        if (arns.size() > MAX_DESCRIBE_BATCH_SIZE) {
+            throw new InvalidParameterException("Too many ARNs: " + arns.size());
+        }
+    }
+
+}
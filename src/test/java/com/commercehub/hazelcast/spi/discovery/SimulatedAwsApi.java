@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.AmazonServiceException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Injects latency, throttling and failures into simulated AWS API calls and counts them. Faults can be changed while
+ * discovery is running.
+ */
+class SimulatedAwsApi {
+
+    private volatile long latencyNanos;
+    private volatile int throttleEvery;
+    private volatile int failEvery;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong throttledCalls = new AtomicLong();
+    private final AtomicLong failedCalls = new AtomicLong();
+    private final Map<String, AtomicLong> callsByOperation = new ConcurrentHashMap<>();
+
+    /**
+     * @param latencyMillis simulated round trip time of each call
+     * @param throttleEvery throttle every n-th call, or 0 to never throttle
+     */
+    SimulatedAwsApi(long latencyMillis, int throttleEvery) {
+        setLatencyMillis(latencyMillis);
+        setThrottleEvery(throttleEvery);
+    }
+
+    void setLatencyMillis(long latencyMillis) {
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+    }
+
+    /**
+     * @param throttleEvery throttle every n-th call, or 0 to never throttle
+     */
+    void setThrottleEvery(int throttleEvery) {
+        this.throttleEvery = throttleEvery;
+    }
+
+    /**
+     * @param failEvery fail every n-th call with an internal error, or 0 to never fail; 1 fails all calls
+     */
+    void setFailEvery(int failEvery) {
+        this.failEvery = failEvery;
+    }
+
+    /**
+     * Called at the start of every simulated API call.
+     *
+     * @throws AmazonServiceException if the call is throttled or fails
+     */
+    void call(String serviceName, String operationName) {
+        long call = calls.incrementAndGet();
+        callsByOperation.computeIfAbsent(operationName, key -> new AtomicLong()).incrementAndGet();
+
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+
+        int throttleEvery = this.throttleEvery;
+        if (throttleEvery > 0 && call % throttleEvery == 0) {
+            throttledCalls.incrementAndGet();
+            throw serviceException(serviceName, "ThrottlingException", "Rate exceeded", 400);
+        }
+
+        int failEvery = this.failEvery;
+        if (failEvery > 0 && call % failEvery == 0) {
+            failedCalls.incrementAndGet();
+            throw serviceException(serviceName, "InternalFailure", "Simulated failure", 500);
+        }
+    }
+
+    long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return the number of calls of an operation (e.g. {@code ListTasks}), including throttled and failed ones
+     */
+    long getCalls(String operationName) {
+        AtomicLong operationCalls = callsByOperation.get(operationName);
+        return operationCalls != null ? operationCalls.get() : 0;
+    }
+
+    long getThrottledCalls() {
+        return throttledCalls.get();
+    }
+
+    long getFailedCalls() {
+        return failedCalls.get();
+    }
+
+    private static AmazonServiceException serviceException(String serviceName,
+                                                           String errorCode,
+                                                           String message,
+                                                           int statusCode) {
+        AmazonServiceException e = new AmazonServiceException(message);
+        e.setServiceName(serviceName);
+        e.setErrorCode(errorCode);
+        e.setErrorType(statusCode >= 500 ? AmazonServiceException.ErrorType.Service
+                : AmazonServiceException.ErrorType.Client);
+        e.setStatusCode(statusCode);
+        return e;
+    }
+
+}
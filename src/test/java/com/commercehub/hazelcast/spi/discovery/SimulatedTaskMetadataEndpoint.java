@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Local stub of the ECS Task Metadata endpoint (v4) describing a task of the simulated service, so that
+ * {@link AmazonECSDiscoveryStrategy#start()} can resolve the cluster and service without AWS.
+ */
+class SimulatedTaskMetadataEndpoint implements AutoCloseable {
+
+    private static final String PATH = "/v4/simulated";
+
+    private final HttpServer server;
+
+    SimulatedTaskMetadataEndpoint(int hazelcastPort) throws IOException {
+        String containerJson = "{\"DockerId\":\"0123456789ab\",\"Name\":\"hazelcast\"," +
+                "\"Ports\":[{\"ContainerPort\":" + hazelcastPort + ",\"Protocol\":\"tcp\",\"HostPort\":32768}]," +
+                "\"Networks\":[{\"NetworkMode\":\"bridge\",\"IPv4Addresses\":[\"172.17.0.2\"]}]}";
+        String taskJson = "{\"Cluster\":\"" + SimulatedTopology.CLUSTER_NAME + "\"," +
+                "\"TaskARN\":\"arn:aws:ecs:us-east-1:123456789012:task/0\"," +
+                "\"ServiceName\":\"" + SimulatedTopology.SERVICE_NAME + "\"," +
+                "\"Containers\":[" + containerJson + "]}";
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(PATH, exchange -> respond(exchange, containerJson));
+        server.createContext(PATH + "/task", exchange -> respond(exchange, taskJson));
+        server.start();
+
+        System.setProperty(AmazonECSAgentIntrospectionUtils.ECS_CONTAINER_METADATA_URI_V4_OVERRIDE_SYSTEM_PROPERTY,
+                "http://127.0.0.1:" + server.getAddress().getPort() + PATH);
+    }
+
+    @Override
+    public void close() {
+        System.clearProperty(AmazonECSAgentIntrospectionUtils.ECS_CONTAINER_METADATA_URI_V4_OVERRIDE_SYSTEM_PROPERTY);
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
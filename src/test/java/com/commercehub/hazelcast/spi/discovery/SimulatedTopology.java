@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Commerce Technologies, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commercehub.hazelcast.spi.discovery;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ecs.model.Container;
+import com.amazonaws.services.ecs.model.ContainerInstance;
+import com.amazonaws.services.ecs.model.NetworkBinding;
+import com.amazonaws.services.ecs.model.Task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A generated ECS cluster in which a single service runs {@code taskCount} tasks spread evenly across
+ * {@code containerInstanceCount} container instances, each task mapping the Hazelcast port to a distinct host port.
+ * Tasks can be started and stopped while discovery is running.
+ */
+class SimulatedTopology {
+
+    static final String CLUSTER_NAME = "simulated-cluster";
+    static final String SERVICE_NAME = "simulated-service";
+
+    private static final String ARN_PREFIX = "arn:aws:ecs:us-east-1:123456789012:";
+    private static final int FIRST_HOST_PORT = 32768;
+
+    private final Map<String, Task> tasksByArn = new LinkedHashMap<>();
+    private final Map<String, ContainerInstance> containerInstancesByArn = new LinkedHashMap<>();
+    private final Map<String, Instance> ec2InstancesById = new HashMap<>();
+    private final List<ContainerInstance> containerInstances;
+    private final int hazelcastPort;
+    private int nextTask;
+
+    SimulatedTopology(int taskCount, int containerInstanceCount, int hazelcastPort) {
+        this.hazelcastPort = hazelcastPort;
+
+        for (int i = 0; i < containerInstanceCount; i++) {
+            String ec2InstanceId = String.format("i-%017x", i);
+            ContainerInstance containerInstance = new ContainerInstance()
+                    .withContainerInstanceArn(ARN_PREFIX + "container-instance/" + i)
+                    .withEc2InstanceId(ec2InstanceId)
+                    .withStatus("ACTIVE");
+            containerInstancesByArn.put(containerInstance.getContainerInstanceArn(), containerInstance);
+            ec2InstancesById.put(ec2InstanceId, new Instance()
+                    .withInstanceId(ec2InstanceId)
+                    .withPrivateIpAddress(String.format("10.%d.%d.%d", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff)));
+        }
+
+        containerInstances = new ArrayList<>(containerInstancesByArn.values());
+        startTasks(taskCount);
+    }
+
+    /**
+     * Starts tasks on the next container instances in turn, each on the next free host port.
+     *
+     * @return the ARNs of the started tasks
+     */
+    synchronized List<String> startTasks(int count) {
+        List<String> taskArns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++, nextTask++) {
+            ContainerInstance containerInstance = containerInstances.get(nextTask % containerInstances.size());
+            Task task = new Task()
+                    .withTaskArn(ARN_PREFIX + "task/" + nextTask)
+                    .withClusterArn(ARN_PREFIX + "cluster/" + CLUSTER_NAME)
+                    .withGroup("service:" + SERVICE_NAME)
+                    .withContainerInstanceArn(containerInstance.getContainerInstanceArn())
+                    .withLastStatus("RUNNING")
+                    .withDesiredStatus("RUNNING")
+                    .withContainers(new Container()
+                            .withName("hazelcast")
+                            .withNetworkBindings(new NetworkBinding()
+                                    .withContainerPort(hazelcastPort)
+                                    .withHostPort(FIRST_HOST_PORT + nextTask / containerInstances.size())
+                                    .withProtocol("tcp")));
+            tasksByArn.put(task.getTaskArn(), task);
+            taskArns.add(task.getTaskArn());
+        }
+        return taskArns;
+    }
+
+    /**
+     * Stops a task; like in ECS, it can still be described for a while, but is no longer listed as running.
+     */
+    synchronized void stopTask(String taskArn) {
+        Task task = tasksByArn.get(taskArn);
+        if (task != null) {
+            tasksByArn.put(taskArn, task.clone().withDesiredStatus("STOPPED").withLastStatus("STOPPED"));
+        }
+    }
+
+    /**
+     * @return the ARNs of all tasks that should be running, in the order they were started
+     */
+    synchronized List<String> getTaskArns() {
+        List<String> taskArns = new ArrayList<>(tasksByArn.size());
+        for (Task task : tasksByArn.values()) {
+            if ("RUNNING".equals(task.getDesiredStatus())) {
+                taskArns.add(task.getTaskArn());
+            }
+        }
+        return Collections.unmodifiableList(taskArns);
+    }
+
+    synchronized Task getTask(String taskArn) {
+        return tasksByArn.get(taskArn);
+    }
+
+    /**
+     * @return the private IP address of the EC2 instance hosting the task
+     */
+    synchronized String getHostIpAddress(String taskArn) {
+        String containerInstanceArn = tasksByArn.get(taskArn).getContainerInstanceArn();
+        ContainerInstance containerInstance = containerInstancesByArn.get(containerInstanceArn);
+        return ec2InstancesById.get(containerInstance.getEc2InstanceId()).getPrivateIpAddress();
+    }
+
+    ContainerInstance getContainerInstance(String containerInstanceArn) {
+        return containerInstancesByArn.get(containerInstanceArn);
+    }
+
+    Instance getEc2Instance(String ec2InstanceId) {
+        return ec2InstancesById.get(ec2InstanceId);
+    }
+
+}